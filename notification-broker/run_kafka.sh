@@ -56,6 +56,38 @@ else
   echo "Le topic ens_notification_dlt-smir existe déjà."
 fi
 
+# Topic de sortie des notifications traitées (spring.kafka.consumer.notification.output-topic)
+TOPIC_EXISTS=$(docker exec broker1 kafka-topics --list --bootstrap-server 127.0.0.1:9092 | grep -w ens_notification_out)
+if [ -z "$TOPIC_EXISTS" ]; then
+  docker exec broker1 kafka-topics \
+    --create \
+    --topic ens_notification_out \
+    --bootstrap-server broker1:9092 \
+    --partitions 6 \
+    --replication-factor 3 \
+    --config min.insync.replicas=2
+  echo "Le topic ens_notification_out créé avec succès."
+else
+  echo "Le topic ens_notification_out existe déjà."
+fi
+
+# Topics de retry non bloquant, un par palier (spring.kafka.consumer.notification.retry-topics.delays-ms)
+for RETRY_TOPIC in ens_notification-retry-1000 ens_notification-retry-10000 ens_notification-retry-60000; do
+  TOPIC_EXISTS=$(docker exec broker1 kafka-topics --list --bootstrap-server 127.0.0.1:9092 | grep -w $RETRY_TOPIC)
+  if [ -z "$TOPIC_EXISTS" ]; then
+    docker exec broker1 kafka-topics \
+      --create \
+      --topic $RETRY_TOPIC \
+      --bootstrap-server broker1:9092 \
+      --partitions 6 \
+      --replication-factor 3 \
+      --config min.insync.replicas=2
+    echo "Le topic $RETRY_TOPIC créé avec succès."
+  else
+    echo "Le topic $RETRY_TOPIC existe déjà."
+  fi
+done
+
 #echo "Rollback offsets"
 #docker exec broker1 kafka-consumer-groups \
 #	--bootstrap-server broker1:9092 \
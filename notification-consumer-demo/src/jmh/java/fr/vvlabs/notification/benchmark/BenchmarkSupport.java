@@ -0,0 +1,32 @@
+package fr.vvlabs.notification.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import fr.vvlabs.notification.record.NotificationEvent;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utilitaires communs aux benchmarks JMH.
+ */
+public final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Hors Spring, Logback logue tout en DEBUG sur la console : le coût des logs masquerait celui du code mesuré.
+     */
+    public static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    public static NotificationEvent sampleEvent(String eventType) {
+        NotificationEvent event = new NotificationEvent();
+        event.setEvent(eventType);
+        event.setUserId("2f1c6a0e-8b4d-4c1e-9a57-3d2b7f9e6c10");
+        event.setIpAddress("127.0.0.1");
+        event.setUserAgent("chrome");
+        event.setMessageNumber(4242);
+        return event;
+    }
+}
@@ -0,0 +1,96 @@
+package fr.vvlabs.notification.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.vvlabs.notification.metrics.NotificationMetrics;
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.serialization.NotificationEventDeserializer;
+import fr.vvlabs.notification.service.NotificationService;
+import fr.vvlabs.notification.service.handler.AjoutDocumentHandler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chemin d'un message dans le consommateur : lecture du JSON puis aiguillage par type d'évènement (handler et sa file).
+ * Les évènements appelant SMIR (appel distant simulé) ne sont pas mesurés ici.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsumerHotPathBenchmark {
+
+    private static final String TOPIC = "ens_notification";
+
+    @Param({"AJOUT_DOCUMENT", "INCONNU"})
+    private String eventType;
+
+    private NotificationEventDeserializer deserializer;
+    private AjoutDocumentHandler ajoutDocumentHandler;
+    private NotificationService notificationService;
+    private NotificationEvent event;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkSupport.quietLogging();
+        ObjectMapper objectMapper = new ObjectMapper();
+        deserializer = new NotificationEventDeserializer(objectMapper);
+
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        NotificationMetrics notificationMetrics = new NotificationMetrics(meterRegistry);
+        notificationMetrics.init();
+        ajoutDocumentHandler = new AjoutDocumentHandler(meterRegistry, 64, 10000);
+        notificationService = new NotificationService(List.of(ajoutDocumentHandler), notificationMetrics, Optional.empty());
+
+        event = BenchmarkSupport.sampleEvent(eventType);
+        payload = objectMapper.writeValueAsBytes(event);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ajoutDocumentHandler.close();
+    }
+
+    @Benchmark
+    public NotificationEvent parse() {
+        return deserializer.deserialize(TOPIC, payload);
+    }
+
+    @Benchmark
+    public void dispatch(Blackhole blackhole) {
+        try {
+            notificationService.buildAndSendNotification(event);
+        } catch (RuntimeException e) {
+            // Erreur simulée de AJOUT_DOCUMENT (2 %)
+            blackhole.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void parseAndDispatch(Blackhole blackhole) {
+        try {
+            notificationService.buildAndSendNotification(deserializer.deserialize(TOPIC, payload));
+        } catch (RuntimeException e) {
+            blackhole.consume(e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package fr.vvlabs.notification.benchmark;
+
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.service.dedup.NotificationDeduplicator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fenêtre de déduplication préremplie de {@code keys} notifications : empreintes 64 bits (NotificationDeduplicator)
+ * contre un HashSet des clés complètes. La taille du tas après remplissage est affichée au démarrage.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeduplicationBenchmark {
+
+    @Param({"1000000"})
+    private int keys;
+
+    private NotificationDeduplicator deduplicator;
+    private Set<String> exactKeys;
+    private NotificationEvent[] events;
+    private int next;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.quietLogging();
+        long before = usedHeap();
+        deduplicator = new NotificationDeduplicator(new SimpleMeterRegistry(), 600000, 10, keys * 2L, 1024);
+        events = new NotificationEvent[keys * 2];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = BenchmarkSupport.sampleEvent("AJOUT_DOCUMENT");
+            events[i].setMessageNumber(i);
+        }
+        long afterEvents = usedHeap();
+        for (int i = 0; i < keys; i++) {
+            deduplicator.markProcessed(events[i]);
+        }
+        long afterFingerprints = usedHeap();
+        exactKeys = new HashSet<>();
+        for (int i = 0; i < keys; i++) {
+            exactKeys.add(key(events[i]));
+        }
+        long afterExact = usedHeap();
+        System.out.printf("%n%d clés : empreintes %d Mo, HashSet<String> %d Mo (évènements %d Mo)%n", keys,
+                (afterFingerprints - afterEvents) >> 20, (afterExact - afterFingerprints) >> 20, (afterEvents - before) >> 20);
+    }
+
+    // Moitié doublons (clés préremplies), moitié nouvelles clés
+    @Benchmark
+    public boolean fingerprints() {
+        NotificationEvent event = events[nextIndex()];
+        return deduplicator.isDuplicate(event);
+    }
+
+    @Benchmark
+    public boolean exact() {
+        NotificationEvent event = events[nextIndex()];
+        return exactKeys.contains(key(event));
+    }
+
+    private int nextIndex() {
+        next = next + 1 == events.length ? 0 : next + 1;
+        return next;
+    }
+
+    private static String key(NotificationEvent event) {
+        return event.getEvent() + "/" + event.getUserId() + "/" + event.getMessageNumber();
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,64 @@
+package fr.vvlabs.notification.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.serialization.NotificationEventDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare l'ancien chemin (StringDeserializer puis ObjectMapper.readValue) à la désérialisation directe des octets.
+ * Lancer avec -prof gc pour comparer les allocations par message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeserializationBenchmark {
+
+    private static final String TOPIC = "notification";
+
+    private ObjectMapper objectMapper;
+    private StringDeserializer stringDeserializer;
+    private NotificationEventDeserializer notificationEventDeserializer;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws Exception {
+        objectMapper = new ObjectMapper();
+        stringDeserializer = new StringDeserializer();
+        notificationEventDeserializer = new NotificationEventDeserializer(objectMapper);
+
+        NotificationEvent event = new NotificationEvent();
+        event.setEvent("AJOUT_DOCUMENT");
+        event.setUserId("user-4242");
+        event.setIpAddress("192.168.1.42");
+        event.setUserAgent("Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0 Safari/537.36");
+        event.setMessageNumber(4242);
+        payload = objectMapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public NotificationEvent stringThenObjectMapper() throws Exception {
+        String value = stringDeserializer.deserialize(TOPIC, payload);
+        return objectMapper.readValue(value, NotificationEvent.class);
+    }
+
+    @Benchmark
+    public NotificationEvent bytesWithObjectReader() {
+        return notificationEventDeserializer.deserialize(TOPIC, payload);
+    }
+}
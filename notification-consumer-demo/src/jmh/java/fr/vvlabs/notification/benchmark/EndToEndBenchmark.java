@@ -0,0 +1,238 @@
+package fr.vvlabs.notification.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import fr.vvlabs.notification.NotificationConsumerDemo;
+import fr.vvlabs.notification.config.CommitStrategy;
+import fr.vvlabs.notification.config.ConsumerMode;
+import fr.vvlabs.notification.metrics.NotificationMetrics;
+import fr.vvlabs.notification.record.NotificationEvent;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Matrice de bout en bout ConsumerMode × CommitStrategy × max-poll-records sur un broker Kafka embarqué.
+ * <p>
+ * Pour chaque combinaison, le consommateur est démarré sur un topic dédié, une charge fixe est produite, puis le débit,
+ * les latences p50 / p99 (timestamp du record → fin de traitement) et le nombre de commits sont écrits dans un rapport JSON.
+ * <pre>
+ * mvn -Pbenchmark compile exec:exec -Dbenchmark.mainClass=fr.vvlabs.notification.benchmark.EndToEndBenchmark \
+ *     -Dbenchmark.args="--messages=5000 --max-poll-records=50,500"
+ * </pre>
+ */
+public class EndToEndBenchmark {
+
+    private static final int PARTITIONS = 6;
+    private static final AtomicInteger RUN = new AtomicInteger();
+
+    private final Map<String, String> options;
+    // Payloads compacts, comme en production ; seul le rapport est indenté
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper reportMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final Random random = new Random(42);
+    private EmbeddedKafkaKraftBroker broker;
+
+    public EndToEndBenchmark(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        new EndToEndBenchmark(options).run();
+    }
+
+    public void run() throws Exception {
+        int messages = Integer.parseInt(option("messages", "5000"));
+        List<String> modes = list("modes", ConsumerMode.RECORD + "," + ConsumerMode.BATCH);
+        List<String> strategies = list("strategies", String.join(",",
+                CommitStrategy.AUTO, CommitStrategy.MANUAL, CommitStrategy.TRANSACTION, CommitStrategy.EOS));
+        List<Integer> maxPollRecords = list("max-poll-records", "50,500").stream().map(Integer::valueOf).toList();
+        File output = new File(option("output", "target/benchmark/end-to-end.json"));
+
+        broker = new EmbeddedKafkaKraftBroker(1, PARTITIONS);
+        // Broker unique : les topics internes (offsets, transactions) ne peuvent pas être répliqués
+        broker.brokerProperties(Map.of(
+                "offsets.topic.replication.factor", "1",
+                "transaction.state.log.replication.factor", "1",
+                "transaction.state.log.min.isr", "1"));
+        broker.afterPropertiesSet();
+        try {
+            // Chauffe de la JVM, non reportée
+            runScenario(ConsumerMode.BATCH, CommitStrategy.AUTO, maxPollRecords.getFirst(), Integer.parseInt(option("warmup-messages", "1000")));
+
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (String mode : modes) {
+                for (String strategy : strategies) {
+                    // max-poll-records ne s'applique qu'au mode batch
+                    List<Integer> pollSizes = ConsumerMode.BATCH.equals(mode) ? maxPollRecords : Collections.singletonList(null);
+                    for (Integer pollSize : pollSizes) {
+                        Map<String, Object> result = runScenario(mode, strategy, pollSize, messages);
+                        System.out.println(result);
+                        results.add(result);
+                    }
+                }
+            }
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("messages", messages);
+            report.put("partitions", PARTITIONS);
+            report.put("smir", Map.of(
+                    "minDelayMs", option("smir-min-delay-ms", "1"),
+                    "maxDelayMs", option("smir-max-delay-ms", "5"),
+                    "failureRate", option("smir-failure-rate", "0.05")));
+            report.put("results", results);
+            output.getParentFile().mkdirs();
+            reportMapper.writeValue(output, report);
+            System.out.println("Rapport écrit dans " + output.getAbsolutePath());
+        } finally {
+            broker.destroy();
+        }
+    }
+
+    private Map<String, Object> runScenario(String mode, String strategy, Integer maxPollRecords, int messages) throws Exception {
+        String topic = "ens_notification_bench_" + RUN.incrementAndGet();
+        broker.addTopics(
+                new NewTopic(topic, PARTITIONS, (short) 1),
+                new NewTopic(topic + "_dlt", PARTITIONS, (short) 1),
+                new NewTopic(topic + "_dlt-smir", PARTITIONS, (short) 1),
+                new NewTopic(topic + "_out", PARTITIONS, (short) 1));
+
+        try (ConfigurableApplicationContext context = startConsumer(topic, mode, strategy, maxPollRecords)) {
+            awaitAssignment(context);
+            NotificationMetrics metrics = context.getBean(NotificationMetrics.class);
+
+            long start = System.nanoTime();
+            produce(topic, messages);
+            long deadline = start + TimeUnit.SECONDS.toNanos(Long.parseLong(option("timeout-s", "300")));
+            while (metrics.getMessageCount() < messages && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("mode", mode);
+            result.put("commitStrategy", strategy);
+            result.put("maxPollRecords", maxPollRecords);
+            result.put("completed", metrics.getMessageCount() >= messages);
+            result.put("consumed", metrics.getMessageCount());
+            result.put("durationMs", elapsedMillis);
+            result.put("messagesPerSecond", metrics.getMessageCount() * 1000.0 / Math.max(1, elapsedMillis));
+            result.put("latencyP50Ms", metrics.getEndToEndLatencyMillis(0.5));
+            result.put("latencyP99Ms", metrics.getEndToEndLatencyMillis(0.99));
+            result.put("commits", metrics.getCommitCount());
+            result.put("transactions", metrics.getTransactionCount());
+            result.put("errors", Map.of(
+                    NotificationMetrics.GENERIC, metrics.getErrorCount(NotificationMetrics.GENERIC),
+                    NotificationMetrics.SMIR, metrics.getErrorCount(NotificationMetrics.SMIR)));
+            return result;
+        }
+    }
+
+    private ConfigurableApplicationContext startConsumer(String topic, String mode, String strategy, Integer maxPollRecords) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("spring.kafka.consumer.bootstrap-servers", broker.getBrokersAsString());
+        properties.put("spring.kafka.consumer.notification.group-id", topic + "-group");
+        properties.put("spring.kafka.consumer.notification.topic", topic);
+        properties.put("spring.kafka.consumer.notification.dlt", topic + "_dlt");
+        properties.put("spring.kafka.consumer.notification.dlt-smir", topic + "_dlt-smir");
+        // Toutes les stratégies publient sur le topic de sortie : la comparaison avec eos porte sur le même travail
+        properties.put("spring.kafka.consumer.notification.output-topic", topic + "_out");
+        properties.put("spring.kafka.consumer.notification.mode", mode);
+        properties.put("spring.kafka.consumer.notification.commit-strategy", strategy);
+        if (maxPollRecords != null) {
+            properties.put("spring.kafka.consumer.notification.max-poll-records", maxPollRecords);
+        }
+        properties.put("spring.kafka.consumer.notification.parallel", option("parallel", "false"));
+        // SMIR simulé court, pour que la mesure porte sur Kafka et non sur l'attente de l'API
+        properties.put("smir.simulation.min-delay-ms", option("smir-min-delay-ms", "1"));
+        properties.put("smir.simulation.max-delay-ms", option("smir-max-delay-ms", "5"));
+        properties.put("smir.simulation.failure-rate", option("smir-failure-rate", "0.05"));
+        properties.put("smir.rate-limiter.enabled", option("smir-rate-limiter", "false"));
+        properties.put("spring.jpa.show-sql", false);
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.fr.vvlabs", "WARN");
+
+        return new SpringApplicationBuilder(NotificationConsumerDemo.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .properties(properties)
+                .run();
+    }
+
+    private void awaitAssignment(ConfigurableApplicationContext context) throws Exception {
+        KafkaListenerEndpointRegistry registry = context.getBean(KafkaListenerEndpointRegistry.class);
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            if (container.isRunning()) {
+                ContainerTestUtils.waitForAssignment(container, PARTITIONS);
+            }
+        }
+    }
+
+    private void produce(String topic, int messages) throws Exception {
+        Map<String, Object> config = Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                ProducerConfig.ACKS_CONFIG, "all",
+                ProducerConfig.LINGER_MS_CONFIG, 5);
+        try (KafkaProducer<String, byte[]> producer = new KafkaProducer<>(config, new StringSerializer(), new ByteArraySerializer())) {
+            for (int i = 1; i <= messages; i++) {
+                NotificationEvent event = new NotificationEvent();
+                event.setEvent(randomEvent());
+                event.setUserId(UUID.randomUUID().toString());
+                event.setIpAddress("127.0.0.1");
+                event.setUserAgent("chrome");
+                event.setMessageNumber(i);
+                producer.send(new ProducerRecord<>(topic, event.getUserId(), objectMapper.writeValueAsBytes(event)));
+            }
+            producer.flush();
+        }
+    }
+
+    // Même répartition que le producteur de démonstration
+    private String randomEvent() {
+        double randomValue = random.nextDouble() * 100;
+        if (randomValue < 90) {
+            return "AJOUT_DOCUMENT";
+        } else if (randomValue < 95) {
+            return "OUVERTURE_ENS";
+        } else {
+            return "INCITATION_ENROLEMENT";
+        }
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private List<String> list(String name, String defaultValue) {
+        return Arrays.stream(option(name, defaultValue).split(",")).map(String::trim).toList();
+    }
+}
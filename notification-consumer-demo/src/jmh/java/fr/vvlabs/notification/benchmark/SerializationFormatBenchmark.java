@@ -0,0 +1,83 @@
+package fr.vvlabs.notification.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.serialization.NotificationEventAvroDeserializer;
+import fr.vvlabs.notification.serialization.NotificationEventAvroSerializer;
+import fr.vvlabs.notification.serialization.NotificationEventDeserializer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare le coût et la taille des messages JSON et Avro (schema registry en mémoire).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationFormatBenchmark {
+
+    private static final String TOPIC = "ens_notification";
+
+    @Param({"json", "avro"})
+    private String format;
+
+    private Serializer<NotificationEvent> serializer;
+    private Deserializer<NotificationEvent> deserializer;
+    private NotificationEvent event;
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        if ("avro".equals(format)) {
+            serializer = new NotificationEventAvroSerializer("mock://benchmark");
+            deserializer = new NotificationEventAvroDeserializer("mock://benchmark");
+        } else {
+            ObjectMapper objectMapper = new ObjectMapper();
+            serializer = new JsonSerializer<NotificationEvent>(objectMapper).noTypeInfo();
+            deserializer = new NotificationEventDeserializer(objectMapper);
+        }
+
+        event = new NotificationEvent();
+        event.setEvent("AJOUT_DOCUMENT");
+        event.setUserId("2f1c6a0e-8b4d-4c1e-9a57-3d2b7f9e6c10");
+        event.setIpAddress("127.0.0.1");
+        event.setUserAgent("chrome");
+        event.setMessageNumber(4242);
+        payload = serializer.serialize(TOPIC, event);
+        System.out.printf("%n[%s] taille du message : %d octets%n", format, payload.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        serializer.close();
+        deserializer.close();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(TOPIC, event);
+    }
+
+    @Benchmark
+    public NotificationEvent deserialize() {
+        return deserializer.deserialize(TOPIC, payload);
+    }
+}
@@ -0,0 +1,154 @@
+package fr.vvlabs.notification.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Temps de démarrage du consommateur selon le mode de lancement : jar standard, profil fast, Spring AOT,
+ * AOT + archive CDS, image native. Chaque variante est lancée {@code runs} fois dans un processus dédié ; le temps
+ * mesuré va du lancement du processus à la ligne de log {@code marker} (par défaut, fin du démarrage de Spring Boot ;
+ * {@code --marker="partitions assigned"} mesure jusqu'à l'assignation des partitions, avec un broker démarré).
+ * <pre>
+ * mvn -Pfast-startup package                  # jar avec classes AOT + archive CDS dans target/cds
+ * mvn -Pnative native:compile                 # optionnel : image native
+ * mvn -Pbenchmark compile exec:exec -Dbenchmark.mainClass=fr.vvlabs.notification.benchmark.StartupBenchmark \
+ *     -Dbenchmark.args="--runs=5"
+ * </pre>
+ * Les variantes dont l'artefact est absent sont ignorées.
+ */
+public class StartupBenchmark {
+
+    private final Map<String, String> options;
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public StartupBenchmark(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        new StartupBenchmark(options).run();
+    }
+
+    public void run() throws Exception {
+        int runs = Integer.parseInt(option("runs", "5"));
+        String marker = option("marker", "Started NotificationConsumerDemo");
+        File jar = new File(option("jar", "target/notification-consumer-demo-1.0.0.jar"));
+        File cdsDirectory = new File(option("cds-directory", "target/cds"));
+        File extractedJar = new File(cdsDirectory, jar.getName());
+        File archive = new File(cdsDirectory, "application.jsa");
+        File nativeImage = new File(option("native", "target/notification-consumer-demo"));
+        File output = new File(option("output", "target/benchmark/startup.json"));
+
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        // Port aléatoire : les lancements successifs ne se gênent pas ; pas de console H2 ni de springdoc en fast
+        List<String> appArgs = List.of("--server.port=0");
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+        variants.put("jar", concat(List.of(java, "-jar", jar.getPath()), appArgs));
+        variants.put("jar-fast", concat(List.of(java, "-jar", jar.getPath(), "--spring.profiles.active=fast"), appArgs));
+        variants.put("aot", concat(List.of(java, "-Dspring.aot.enabled=true", "-jar", jar.getPath(),
+                "--spring.profiles.active=fast"), appArgs));
+        if (archive.exists()) {
+            variants.put("aot-cds", concat(List.of(java, "-XX:SharedArchiveFile=" + archive.getPath(), "-Dspring.aot.enabled=true",
+                    "-jar", extractedJar.getPath(), "--spring.profiles.active=fast"), appArgs));
+        }
+        if (nativeImage.canExecute()) {
+            variants.put("native", concat(List.of(nativeImage.getPath(), "--spring.profiles.active=fast"), appArgs));
+        }
+        if (!jar.exists()) {
+            throw new IllegalStateException("Jar absent, lancer d'abord mvn -Pfast-startup package : " + jar.getAbsolutePath());
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+            // Premier lancement non reporté : cache disque, compilation des classes AOT par le JIT...
+            measure(variant.getValue(), marker);
+            long[] durations = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                durations[i] = measure(variant.getValue(), marker);
+            }
+            Arrays.sort(durations);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("variant", variant.getKey());
+            result.put("command", String.join(" ", variant.getValue()));
+            result.put("minMs", durations[0]);
+            result.put("medianMs", durations[runs / 2]);
+            result.put("maxMs", durations[runs - 1]);
+            System.out.println(result);
+            results.add(result);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("runs", runs);
+        report.put("marker", marker);
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("results", results);
+        output.getParentFile().mkdirs();
+        objectMapper.writeValue(output, report);
+        System.out.println("Rapport écrit dans " + output.getAbsolutePath());
+    }
+
+    private long measure(List<String> command, String marker) throws Exception {
+        long timeout = Long.parseLong(option("timeout-s", "120"));
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        // Lecture de la sortie sur un thread dédié : un processus bloqué sans rien écrire ne bloque pas l'attente
+        CompletableFuture<Long> started = new CompletableFuture<>();
+        Thread.ofVirtual().start(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.contains(marker)) {
+                        started.complete(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        return;
+                    }
+                }
+                started.completeExceptionally(new IllegalStateException("Processus terminé avant '" + marker + "'"));
+            } catch (IOException e) {
+                started.completeExceptionally(e);
+            }
+        });
+        try {
+            return started.get(timeout, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("'" + marker + "' non trouvé en " + timeout + " s : " + String.join(" ", command));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("'" + marker + "' non trouvé : " + String.join(" ", command), e.getCause());
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> command = new ArrayList<>(first);
+        command.addAll(second);
+        return command;
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+}
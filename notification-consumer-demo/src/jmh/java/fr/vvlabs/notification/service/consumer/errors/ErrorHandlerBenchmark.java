@@ -0,0 +1,89 @@
+package fr.vvlabs.notification.service.consumer.errors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.vvlabs.notification.benchmark.BenchmarkSupport;
+import fr.vvlabs.notification.metrics.NotificationMetrics;
+import fr.vvlabs.notification.model.CompressedStringConverter;
+import fr.vvlabs.notification.model.ErrorEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Préparation d'une erreur pour la DLT : copie des en-têtes vers le record Kafka, construction de l'entité base de données
+ * et compression de son contenu.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorHandlerBenchmark {
+
+    private NotificationSilentErrorHandler errorHandler;
+    private Message<?> message;
+    private Exception exception;
+    private CompressedStringConverter converter;
+    private String record;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.quietLogging();
+        NotificationMetrics notificationMetrics = new NotificationMetrics(new SimpleMeterRegistry());
+        notificationMetrics.init();
+        errorHandler = new NotificationSilentErrorHandler(null, notificationMetrics, new ObjectMapper());
+
+        // En-têtes d'un message reçu par le listener
+        message = MessageBuilder.withPayload(BenchmarkSupport.sampleEvent("AJOUT_DOCUMENT"))
+                .setHeader(KafkaHeaders.RECEIVED_KEY, "2f1c6a0e-8b4d-4c1e-9a57-3d2b7f9e6c10")
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, "ens_notification")
+                .setHeader(KafkaHeaders.RECEIVED_PARTITION, 3)
+                .setHeader(KafkaHeaders.OFFSET, 123456L)
+                .setHeader(KafkaHeaders.RECEIVED_TIMESTAMP, System.currentTimeMillis())
+                .setHeader(KafkaHeaders.GROUP_ID, "ens-notification")
+                .setHeader("traceparent", "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01".getBytes(StandardCharsets.UTF_8))
+                .build();
+        exception = new RuntimeException("Erreur simulée lors de l'ajout du document.");
+
+        converter = new CompressedStringConverter();
+        record = errorHandler.buildErrorEntity(message, exception, "Generic").getRecord();
+        compressed = converter.convertToDatabaseColumn(record);
+    }
+
+    @Benchmark
+    public ProducerRecord<String, Object> buildErrorRecord() {
+        return errorHandler.buildErrorRecord(message, "ens_notification_dlt");
+    }
+
+    @Benchmark
+    public ErrorEntity buildErrorEntity() {
+        return errorHandler.buildErrorEntity(message, exception, "Generic");
+    }
+
+    @Benchmark
+    public byte[] compressRecord() {
+        return converter.convertToDatabaseColumn(record);
+    }
+
+    @Benchmark
+    public String decompressRecord() {
+        return converter.convertToEntityAttribute(compressed);
+    }
+}
@@ -0,0 +1,11 @@
+package fr.vvlabs.notification.config;
+
+public class AssignmentStrategy {
+
+    // Eager : toutes les partitions du groupe sont révoquées à chaque rééquilibrage
+    public static final String RANGE = "range";
+    public static final String ROUND_ROBIN = "round-robin";
+    public static final String STICKY = "sticky";
+    // Incrémental : seules les partitions qui changent de consommateur sont révoquées
+    public static final String COOPERATIVE_STICKY = "cooperative-sticky";
+}
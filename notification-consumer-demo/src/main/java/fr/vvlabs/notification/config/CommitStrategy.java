@@ -5,4 +5,6 @@ public class CommitStrategy {
     public static final String AUTO = "auto";
     public static final String MANUAL = "manual";
     public static final String TRANSACTION = "transaction";
+    // Exactly-once : transaction démarrée par le container, sorties et offsets commités ensemble
+    public static final String EOS = "eos";
 }
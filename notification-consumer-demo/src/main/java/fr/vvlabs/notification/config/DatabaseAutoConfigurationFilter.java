@@ -0,0 +1,46 @@
+package fr.vvlabs.notification.config;
+
+import org.springframework.boot.autoconfigure.AutoConfigurationImportFilter;
+import org.springframework.boot.autoconfigure.AutoConfigurationMetadata;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+
+import java.util.Set;
+
+/**
+ * Sans DLT base de données ({@code dlt-database: false}), aucune auto-configuration JPA / DataSource / H2 n'est
+ * chargée : ni pool de connexions, ni démarrage d'Hibernate, ni console H2 au lancement du consommateur.
+ */
+public class DatabaseAutoConfigurationFilter implements AutoConfigurationImportFilter, EnvironmentAware {
+
+    private static final Set<String> DATABASE_AUTO_CONFIGURATIONS = Set.of(
+            "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration",
+            "org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration",
+            "org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration",
+            "org.springframework.boot.autoconfigure.jdbc.JdbcClientAutoConfiguration",
+            "org.springframework.boot.autoconfigure.sql.init.SqlInitializationAutoConfiguration",
+            "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration",
+            "org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration",
+            "org.springframework.boot.autoconfigure.h2.H2ConsoleAutoConfiguration",
+            "org.springframework.boot.actuate.autoconfigure.jdbc.DataSourceHealthContributorAutoConfiguration",
+            "org.springframework.boot.actuate.autoconfigure.metrics.jdbc.DataSourcePoolMetricsAutoConfiguration",
+            "org.springframework.boot.actuate.autoconfigure.metrics.orm.jpa.HibernateMetricsAutoConfiguration");
+
+    private boolean dltDatabaseEnabled = true;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        dltDatabaseEnabled = environment.getProperty("spring.kafka.consumer.notification.dlt-database", Boolean.class, false);
+    }
+
+    @Override
+    public boolean[] match(String[] autoConfigurationClasses, AutoConfigurationMetadata autoConfigurationMetadata) {
+        boolean[] matches = new boolean[autoConfigurationClasses.length];
+        for (int i = 0; i < autoConfigurationClasses.length; i++) {
+            matches[i] = dltDatabaseEnabled
+                    || autoConfigurationClasses[i] == null
+                    || !DATABASE_AUTO_CONFIGURATIONS.contains(autoConfigurationClasses[i]);
+        }
+        return matches;
+    }
+}
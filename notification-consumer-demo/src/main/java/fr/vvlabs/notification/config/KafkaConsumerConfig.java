@@ -1,16 +1,33 @@
 package fr.vvlabs.notification.config;
 
-import fr.vvlabs.notification.repository.ErrorEntityRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.vvlabs.notification.metrics.NotificationMetrics;
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.serialization.NotificationEventAvro;
+import fr.vvlabs.notification.serialization.NotificationEventAvroDeserializer;
+import fr.vvlabs.notification.serialization.NotificationEventAvroSerializer;
+import fr.vvlabs.notification.serialization.NotificationEventDeserializer;
+import fr.vvlabs.notification.service.consumer.errors.ErrorEntityWriteBehindSink;
 import fr.vvlabs.notification.service.consumer.errors.NotificationThrowErrorHandler;
+import fr.vvlabs.notification.service.consumer.rebalance.NotificationRebalanceListener;
+import fr.vvlabs.notification.service.consumer.retry.RetryTopicRouter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
+import org.apache.kafka.clients.consumer.RangeAssignor;
+import org.apache.kafka.clients.consumer.RoundRobinAssignor;
+import org.apache.kafka.clients.consumer.StickyAssignor;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -19,9 +36,17 @@ import org.springframework.kafka.core.*;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.util.StringUtils;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -29,10 +54,16 @@ import java.util.Optional;
 @Slf4j
 public class KafkaConsumerConfig {
 
+    // Stratégies utilisant un producteur transactionnel
+    private static final String TRANSACTIONAL_STRATEGY = "'${spring.kafka.consumer.notification.commit-strategy:auto}' == '"
+            + CommitStrategy.TRANSACTION + "' or '${spring.kafka.consumer.notification.commit-strategy:auto}' == '" + CommitStrategy.EOS + "'";
+
     @Value("${spring.kafka.consumer.bootstrap-servers}")
     private String bootstrapServers;
     @Value("${spring.kafka.consumer.notification.group-id}")
     private String groupId;
+    @Value("${spring.kafka.consumer.notification.topic}")
+    private String topic;
     @Value("${spring.kafka.consumer.notification.mode:batch}") // record or batch
     private String consumerMode;
     @Value("${spring.kafka.consumer.notification.commit-strategy:auto}") // auto, manual, transaction
@@ -54,18 +85,57 @@ public class KafkaConsumerConfig {
     @Value("${spring.kafka.consumer.notification.max-poll-interval-ms:300000}")
     private int maxPollInterval;
     @Autowired(required = false)
-    protected Optional<ErrorEntityRepository> errorRecordRepository;
+    protected Optional<ErrorEntityWriteBehindSink> errorEntitySink;
     @Value("${spring.kafka.consumer.notification.dlt-database:false}")
     protected boolean dltDatabaseEnabled;
+    @Value("${spring.application.name}")
+    private String applicationName;
+    @Value("${spring.kafka.consumer.notification.instance-id:}")
+    private String instanceId;
+    @Value("${spring.kafka.consumer.notification.concurrency:1}")
+    private int concurrency;
+    @Value("${spring.kafka.consumer.notification.rebalance.assignor:cooperative-sticky,range}")
+    private String assignor;
+    @Value("${spring.kafka.consumer.notification.rebalance.static-membership:false}")
+    private boolean staticMembership;
+    @Value("${spring.kafka.consumer.notification.rebalance.session-timeout-ms:45000}")
+    private int sessionTimeout;
+    @Value("${spring.kafka.consumer.notification.transaction-producer-pool-size:0}")
+    private int transactionProducerPoolSize;
+    @Value("${spring.kafka.consumer.notification.transaction-batch-size:1}")
+    private int transactionBatchSize;
+    @Value("${spring.kafka.consumer.notification.transaction-batch-timeout-ms:100}")
+    private long transactionBatchTimeout;
+    @Value("${spring.kafka.consumer.notification.output-topic:}")
+    private String outputTopic;
+    @Value("${spring.kafka.consumer.notification.out-of-order.enabled:false}")
+    private boolean outOfOrder;
+    @Value("${spring.kafka.consumer.notification.out-of-order.commit-interval-ms:1000}")
+    private long outOfOrderCommitInterval;
+    @Value("${spring.kafka.consumer.notification.dlt-send-timeout-ms:30000}")
+    private long dltSendTimeout;
+    @Value("${spring.kafka.consumer.notification.format:json}") // json, avro
+    private String format;
+    @Value("${spring.kafka.consumer.notification.schema-registry-url:mock://notification}")
+    private String schemaRegistryUrl;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     @Bean
     public boolean isAutoStartup() {
-        return !CommitStrategy.MANUAL.equalsIgnoreCase(commitStrategy);
+        return !isManualStartup();
     }
 
     @Bean
     public boolean isManualStartup() {
-        return CommitStrategy.MANUAL.equalsIgnoreCase(commitStrategy);
+        return CommitStrategy.MANUAL.equalsIgnoreCase(commitStrategy) || isAggregatedTransaction();
+    }
+
+    // Mode record, plusieurs records par transaction : les offsets sont acquittés après le commit de la transaction
+    private boolean isAggregatedTransaction() {
+        return CommitStrategy.TRANSACTION.equalsIgnoreCase(commitStrategy)
+                && ConsumerMode.RECORD.equals(consumerMode)
+                && transactionBatchSize > 1;
     }
 
     @Bean(name = "genericRecoverer")
@@ -87,7 +157,9 @@ public class KafkaConsumerConfig {
     @Bean
     public NotificationThrowErrorHandler notificationThrowErrorHandler(
             @Qualifier("genericRecoverer") DeadLetterPublishingRecoverer genericRecoverer,
-            @Qualifier("smirRecoverer") DeadLetterPublishingRecoverer smirRecoverer) {
+            @Qualifier("smirRecoverer") DeadLetterPublishingRecoverer smirRecoverer,
+            NotificationMetrics notificationMetrics,
+            Optional<RetryTopicRouter> retryTopicRouter) {
         return new NotificationThrowErrorHandler(
                 genericRecoverer,
                 smirRecoverer,
@@ -96,9 +168,12 @@ public class KafkaConsumerConfig {
                 retries,
                 retriesInterval,
                 retriesSmir,
-                errorRecordRepository,
-                dltDatabaseEnabled
-
+                notificationMetrics,
+                objectMapper,
+                errorEntitySink,
+                dltDatabaseEnabled,
+                retryTopicRouter,
+                dltSendTimeout
         );
     }
 
@@ -108,18 +183,36 @@ public class KafkaConsumerConfig {
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> notificationKafkaListenerContainerFactory(
-            ConsumerFactory<String, String> consumerFactory,
-            DefaultErrorHandler errorHandler) {
+    public ConcurrentKafkaListenerContainerFactory<String, NotificationEvent> notificationKafkaListenerContainerFactory(
+            ConsumerFactory<String, NotificationEvent> consumerFactory,
+            DefaultErrorHandler errorHandler,
+            NotificationThrowErrorHandler notificationThrowErrorHandler,
+            KafkaTemplate<String, Object> kafkaTemplate,
+            Optional<KafkaTransactionManager<String, Object>> kafkaTransactionManager,
+            NotificationRebalanceListener rebalanceListener) {
 
-        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        ConcurrentKafkaListenerContainerFactory<String, NotificationEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
+        factory.setConcurrency(concurrency);
         // Configure error handling with retry control / dead letter topics
         factory.setCommonErrorHandler(errorHandler);
+        // Travail en cours terminé et commité avant la révocation des partitions
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+
+        if (staticMembership) {
+            // Membre statique : un redémarrage dans le délai de session ne déclenche pas de rééquilibrage.
+            // Propriété du container et non de la fabrique : le consommateur de rejeu (autre groupe) n'en hérite pas.
+            // Le container suffixe l'identifiant par l'index du consommateur (-0, -1...) si concurrency > 1.
+            String groupInstanceId = applicationName + "-" + instanceId();
+            log.info("Appartenance statique au groupe : {}, session de {} ms", groupInstanceId, sessionTimeout);
+            factory.getContainerProperties().getKafkaConsumerProperties()
+                    .setProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, groupInstanceId);
+        }
 
         switch (commitStrategy) {
             case CommitStrategy.AUTO :
             case CommitStrategy.TRANSACTION:
+            case CommitStrategy.EOS:
                 switch (consumerMode) {
                     case ConsumerMode.RECORD:
                         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.RECORD);
@@ -138,6 +231,32 @@ public class KafkaConsumerConfig {
                 throw new IllegalStateException("Invalid commitStrategy: " + commitStrategy);
         }
 
+        if (CommitStrategy.EOS.equals(commitStrategy)) {
+            // Sans topic de sortie, la transaction ne contiendrait que les offsets : rien à publier en exactly-once
+            if (outputTopic.isBlank()) {
+                throw new IllegalStateException("spring.kafka.consumer.notification.output-topic requis avec la stratégie "
+                        + CommitStrategy.EOS + " (par exemple ens_notification_out)");
+            }
+            log.info("Stratégie EOS : transaction démarrée par le container, offsets envoyés dans la transaction");
+            factory.getContainerProperties().setKafkaAwareTransactionManager(kafkaTransactionManager
+                    .orElseThrow(() -> new IllegalStateException("KafkaTransactionManager is null")));
+            // Le gestionnaire d'erreurs du container ne s'applique pas aux échecs du listener : rollback puis relecture
+            factory.setAfterRollbackProcessor(notificationThrowErrorHandler.createAfterRollbackProcessor(kafkaTemplate));
+        }
+
+        if (isAggregatedTransaction()) {
+            log.info("Transactions agrégées : {} records ou {} ms", transactionBatchSize, transactionBatchTimeout);
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+            // Evènement d'inactivité : commit de la transaction en cours sans attendre le record suivant
+            factory.getContainerProperties().setIdleEventInterval(transactionBatchTimeout);
+        }
+
+        if (outOfOrder && ConsumerMode.RECORD.equals(consumerMode) && CommitStrategy.MANUAL.equals(commitStrategy)) {
+            log.info("Traitement hors ordre, commit des watermarks toutes les {} ms", outOfOrderCommitInterval);
+            // Evènement d'inactivité : commit des traitements terminés sans attendre le record suivant
+            factory.getContainerProperties().setIdleEventInterval(outOfOrderCommitInterval);
+        }
+
         // Configuration spécifique au mode batch
         if (ConsumerMode.BATCH.equals(consumerMode)) {
             log.info("mode BATCH activé");
@@ -149,13 +268,13 @@ public class KafkaConsumerConfig {
     }
 
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ConsumerFactory<String, NotificationEvent> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, assignors());
+        props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, sessionTimeout);
         if (ConsumerMode.BATCH.equals(consumerMode)) {
             props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
             props.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, maxPollInterval);
@@ -167,10 +286,56 @@ public class KafkaConsumerConfig {
             case CommitStrategy.MANUAL, CommitStrategy.TRANSACTION:
                 props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
                 break;
+            case CommitStrategy.EOS:
+                props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+                // Les messages de transactions annulées (DLT, topic de sortie, retry) ne sont jamais lus
+                props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+                break;
             default:
                 throw new IllegalStateException("Invalid commitStrategy: " + commitStrategy);
         }
-        return new DefaultKafkaConsumerFactory<>(props);
+        // Désérialisation directe des octets en NotificationEvent ; un message illisible est transmis au gestionnaire d'erreurs (DLT)
+        return new DefaultKafkaConsumerFactory<>(props,
+                new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(eventDeserializer()));
+    }
+
+    // Liste par ordre de préférence. Défaut "cooperative-sticky,range" : rejoint un groupe eager existant (révocation
+    // totale tant que range est dans la liste) ; cooperative-sticky seul au déploiement suivant, une fois le groupe migré
+    private List<String> assignors() {
+        return Arrays.stream(assignor.split(","))
+                .map(String::trim)
+                .map(name -> switch (name) {
+                    case AssignmentStrategy.RANGE -> RangeAssignor.class.getName();
+                    case AssignmentStrategy.ROUND_ROBIN -> RoundRobinAssignor.class.getName();
+                    case AssignmentStrategy.STICKY -> StickyAssignor.class.getName();
+                    case AssignmentStrategy.COOPERATIVE_STICKY -> CooperativeStickyAssignor.class.getName();
+                    default -> throw new IllegalStateException("Invalid assignor: " + name);
+                })
+                .toList();
+    }
+
+    private Deserializer<NotificationEvent> eventDeserializer() {
+        switch (format) {
+            case SerializationFormat.JSON:
+                return new NotificationEventDeserializer(objectMapper);
+            case SerializationFormat.AVRO:
+                NotificationEventAvro.registerInMockRegistry(schemaRegistryUrl, topic + "-value");
+                return new NotificationEventAvroDeserializer(schemaRegistryUrl);
+            default:
+                throw new IllegalStateException("Invalid format: " + format);
+        }
+    }
+
+    private Serializer<NotificationEvent> eventSerializer() {
+        switch (format) {
+            case SerializationFormat.JSON:
+                return new JsonSerializer<NotificationEvent>(objectMapper).noTypeInfo();
+            case SerializationFormat.AVRO:
+                return new NotificationEventAvroSerializer(schemaRegistryUrl);
+            default:
+                throw new IllegalStateException("Invalid format: " + format);
+        }
     }
 
     @Bean
@@ -178,11 +343,9 @@ public class KafkaConsumerConfig {
     public ProducerFactory<String, Object> producerFactoryAuto() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
         configProps.put(ProducerConfig.ACKS_CONFIG, "all");
-        return new DefaultKafkaProducerFactory<>(configProps);
+        return new DefaultKafkaProducerFactory<>(configProps, new StringSerializer(), valueSerializer());
     }
 
     @Bean
@@ -190,24 +353,52 @@ public class KafkaConsumerConfig {
     public ProducerFactory<String, Object> producerFactoryManual() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
         configProps.put(ProducerConfig.ACKS_CONFIG, "all");
-        return new DefaultKafkaProducerFactory<>(configProps);
+        return new DefaultKafkaProducerFactory<>(configProps, new StringSerializer(), valueSerializer());
     }
 
     @Bean
-    @ConditionalOnProperty(name = "spring.kafka.consumer.notification.commit-strategy", havingValue = CommitStrategy.TRANSACTION)
+    @ConditionalOnExpression(TRANSACTIONAL_STRATEGY)
     public ProducerFactory<String, Object> producerFactoryTransactional() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
         configProps.put(ProducerConfig.ACKS_CONFIG, "all");
-        configProps.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, "transactional-producer-1"); // ID transactionnel unique
-        return new DefaultKafkaProducerFactory<>(configProps);
+        DefaultKafkaProducerFactory<String, Object> producerFactory =
+                new DefaultKafkaProducerFactory<>(configProps, new StringSerializer(), valueSerializer());
+        // ID transactionnel propre à l'instance, suffixé par producteur du cache : ni les instances
+        // ni les containers concurrents ne se fencent entre eux
+        producerFactory.setTransactionIdPrefix(applicationName + "-" + instanceId() + "-tx-");
+        producerFactory.setTransactionIdSuffixStrategy(new DefaultTransactionIdSuffixStrategy(transactionProducerPoolSize));
+        return producerFactory;
+    }
+
+    // Identifiant stable d'un démarrage à l'autre : le producteur transactionnel de l'exécution précédente (zombie)
+    // est fencé par le même transactional.id. A défaut d'INSTANCE_ID, nom d'hôte (nom du pod en Kubernetes).
+    private String instanceId() {
+        if (StringUtils.hasText(instanceId)) {
+            return instanceId;
+        }
+        try {
+            String hostName = InetAddress.getLocalHost().getHostName();
+            if (StringUtils.hasText(hostName)) {
+                log.info("instance-id absent, nom d'hôte utilisé : {}", hostName);
+                return hostName;
+            }
+        } catch (UnknownHostException e) {
+            log.warn("Nom d'hôte introuvable : {}", e.getMessage());
+        }
+        throw new IllegalStateException("spring.kafka.consumer.notification.instance-id (INSTANCE_ID) requis : "
+                + "identifiant stable et unique par instance");
+    }
+
+    // Valeurs envoyées en DLT : NotificationEvent (format du topic source), String, ou octets bruts d'un message illisible
+    private Serializer<Object> valueSerializer() {
+        return new DelegatingByTypeSerializer(Map.of(
+                NotificationEvent.class, eventSerializer(),
+                String.class, new StringSerializer(),
+                byte[].class, new ByteArraySerializer()));
     }
 
     @Bean
@@ -216,7 +407,7 @@ public class KafkaConsumerConfig {
     }
 
     @Bean
-    @ConditionalOnProperty(name = "spring.kafka.consumer.notification.commit-strategy", havingValue = CommitStrategy.TRANSACTION)
+    @ConditionalOnExpression(TRANSACTIONAL_STRATEGY)
     public KafkaTransactionManager<String, Object> kafkaTransactionManager() {
         return new KafkaTransactionManager<>(producerFactoryTransactional());
     }
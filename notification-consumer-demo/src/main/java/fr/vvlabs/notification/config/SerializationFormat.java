@@ -0,0 +1,7 @@
+package fr.vvlabs.notification.config;
+
+public class SerializationFormat {
+
+    public static final String JSON = "json";
+    public static final String AVRO = "avro";
+}
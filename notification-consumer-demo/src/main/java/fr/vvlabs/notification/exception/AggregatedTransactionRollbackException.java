@@ -0,0 +1,22 @@
+package fr.vvlabs.notification.exception;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Map;
+
+/**
+ * Transaction agrégée annulée : les records qu'elle couvrait doivent être relus à partir de ces offsets.
+ */
+public class AggregatedTransactionRollbackException extends RuntimeException {
+
+    private final transient Map<TopicPartition, Long> firstOffsets;
+
+    public AggregatedTransactionRollbackException(String message, Map<TopicPartition, Long> firstOffsets, Throwable cause) {
+        super(message, cause);
+        this.firstOffsets = Map.copyOf(firstOffsets);
+    }
+
+    public Map<TopicPartition, Long> getFirstOffsets() {
+        return firstOffsets;
+    }
+}
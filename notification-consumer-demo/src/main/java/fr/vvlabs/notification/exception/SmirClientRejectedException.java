@@ -0,0 +1,11 @@
+package fr.vvlabs.notification.exception;
+
+/**
+ * Appel SMIR refusé localement (bulkhead saturé...), sans que l'API SMIR n'ait été sollicitée.
+ */
+public class SmirClientRejectedException extends SmirClientTooManyRequestException {
+
+    public SmirClientRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,187 @@
+package fr.vvlabs.notification.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs du consommateur, sans contention entre threads (LongAdder) et publiés dans Micrometer.
+ */
+@Component
+@RequiredArgsConstructor
+public class NotificationMetrics {
+
+    public static final String GENERIC = "generic";
+    public static final String SMIR = "smir";
+    public static final String TOPIC = "topic";
+    public static final String DATABASE = "database";
+
+    private final MeterRegistry meterRegistry;
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder transactions = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> dlt = new ConcurrentHashMap<>();
+    private final Map<String, Timer> processingTimers = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> retriesSent = new ConcurrentHashMap<>();
+    private final Map<String, Timer> retryTimers = new ConcurrentHashMap<>();
+    private final AtomicLong startTime = new AtomicLong();
+    private DistributionSummary batchSize;
+    private Timer endToEndLatency;
+    private DistributionSummary transactionSize;
+    private Timer transactionCommit;
+
+    @PostConstruct
+    public void init() {
+        registerCounter(messages, "notification.messages", "Notifications consommées");
+        registerCounter(commits, "notification.commits", "Commits manuels des offsets");
+        registerCounter(transactions, "notification.transactions", "Transactions Kafka commitées");
+        batchSize = DistributionSummary.builder("notification.batch.size")
+                .description("Nombre de messages par lot reçu")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        transactionSize = DistributionSummary.builder("notification.transaction.size")
+                .description("Nombre de records par transaction Kafka agrégée")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        transactionCommit = Timer.builder("notification.transaction.commit")
+                .description("Durée du commit d'une transaction Kafka agrégée")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        endToEndLatency = Timer.builder("notification.end-to-end.latency")
+                .description("Délai entre la production d'un message (timestamp du record) et la fin de son traitement")
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("notification.throughput", this, NotificationMetrics::getThroughput)
+                .description("Débit moyen depuis le premier message")
+                .baseUnit("messages/s")
+                .register(meterRegistry);
+    }
+
+    public void markStarted() {
+        startTime.compareAndSet(0, System.currentTimeMillis());
+    }
+
+    public void recordMessages(int count) {
+        messages.add(count);
+    }
+
+    public void recordBatchSize(int size) {
+        batchSize.record(size);
+    }
+
+    public void recordCommit() {
+        commits.increment();
+    }
+
+    public void recordTransaction() {
+        transactions.increment();
+    }
+
+    public void recordTransactionCommit(int size, long durationNanos) {
+        transactionSize.record(size);
+        transactionCommit.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordError(String errorType) {
+        errors.computeIfAbsent(errorType, type -> registerCounter(new LongAdder(), "notification.errors", "Erreurs de traitement", "type", type))
+                .increment();
+    }
+
+    public long recordDlt(String errorType, String destination) {
+        LongAdder counter = dlt.computeIfAbsent(errorType + "/" + destination, key -> registerCounter(
+                new LongAdder(), "notification.dlt", "Messages envoyés en DLT", "type", errorType, "destination", destination));
+        counter.increment();
+        return counter.sum();
+    }
+
+    public void recordProcessing(String eventType, boolean success, long durationNanos) {
+        processingTimers.computeIfAbsent(eventType + "/" + success, key -> Timer.builder("notification.processing")
+                        .description("Temps de traitement d'une notification par type d'événement")
+                        .tag("event", String.valueOf(eventType))
+                        .tag("outcome", success ? "success" : "error")
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRetrySent(String tier) {
+        retriesSent.computeIfAbsent(tier, key -> registerCounter(
+                new LongAdder(), "notification.retry.sent", "Messages envoyés sur un topic de retry", "tier", tier)).increment();
+    }
+
+    /**
+     * Relance traitée : délai réellement observé depuis l'envoi sur le topic de retry (palier + jitter + attente de lecture).
+     */
+    public void recordRetryProcessed(String tier, boolean success, long delayMillis) {
+        retryTimers.computeIfAbsent(tier + "/" + success, key -> Timer.builder("notification.retry.delay")
+                        .description("Délai effectif d'un palier de retry, du renvoi au traitement")
+                        .tag("tier", tier)
+                        .tag("outcome", success ? "success" : "error")
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    public void recordEndToEndLatency(long recordTimestampMillis) {
+        endToEndLatency.record(Math.max(0, System.currentTimeMillis() - recordTimestampMillis), TimeUnit.MILLISECONDS);
+    }
+
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    public long getCommitCount() {
+        return commits.sum();
+    }
+
+    public long getTransactionCount() {
+        return transactions.sum();
+    }
+
+    public long getErrorCount(String errorType) {
+        LongAdder counter = errors.get(errorType);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public double getEndToEndLatencyMillis(double percentile) {
+        for (ValueAtPercentile value : endToEndLatency.takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                return value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return Double.NaN;
+    }
+
+    public long getElapsedMillis() {
+        long start = startTime.get();
+        return start == 0 ? 0 : System.currentTimeMillis() - start;
+    }
+
+    public double getThroughput() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : messages.sum() * 1000.0 / elapsed;
+    }
+
+    private LongAdder registerCounter(LongAdder counter, String name, String description, String... tags) {
+        FunctionCounter.builder(name, counter, LongAdder::doubleValue)
+                .description(description)
+                .tags(tags)
+                .register(meterRegistry);
+        return counter;
+    }
+}
@@ -0,0 +1,85 @@
+package fr.vvlabs.notification.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Colonne texte stockée compressée (deflate brut) : un octet de format, puis les données. Le dictionnaire
+ * prédéfini contient les noms de champs et valeurs fréquents des notifications, ce qui rend la compression
+ * efficace dès les petits messages. Un texte que la compression n'allège pas est stocké tel quel.
+ */
+@Converter
+public class CompressedStringConverter implements AttributeConverter<String, byte[]> {
+
+    private static final byte RAW = 0;
+    private static final byte DEFLATE = 1;
+
+    // Les chaînes les plus probables en fin de dictionnaire (distances plus courtes)
+    private static final byte[] DICTIONARY = ("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) "
+            + "Chrome/ Safari/ \"INCITATION_ENROLEMENT\"\"OUVERTURE_ENS\"\"AJOUT_DOCUMENT\""
+            + "{\"event\":\",\"userId\":\",\"ipAddress\":\",\"userAgent\":\",\"messageNumber\":")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public byte[] convertToDatabaseColumn(String attribute) {
+        if (attribute == null) {
+            return null;
+        }
+        byte[] raw = attribute.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] compressed = new byte[raw.length + 1];
+            compressed[0] = DEFLATE;
+            int length = 1 + deflater.deflate(compressed, 1, raw.length);
+            if (deflater.finished() && length < compressed.length) {
+                return Arrays.copyOf(compressed, length);
+            }
+        } finally {
+            deflater.end();
+        }
+        byte[] stored = new byte[raw.length + 1];
+        stored[0] = RAW;
+        System.arraycopy(raw, 0, stored, 1, raw.length);
+        return stored;
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] column) {
+        if (column == null || column.length == 0) {
+            return null;
+        }
+        if (column[0] == RAW) {
+            return new String(column, 1, column.length - 1, StandardCharsets.UTF_8);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            // Deflate brut : pas d'en-tête signalant le dictionnaire, il est fourni d'emblée
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(column, 1, column.length - 1);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(column.length * 4);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("Truncated compressed column");
+                }
+                output.write(buffer, 0, length);
+            }
+            return output.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Invalid compressed column", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
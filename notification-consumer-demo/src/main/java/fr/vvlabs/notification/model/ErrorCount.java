@@ -0,0 +1,35 @@
+package fr.vvlabs.notification.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Nombre d'erreurs par type et par minute, mis à jour à l'écriture des ErrorEntity : les agrégats ne
+ * parcourent pas la table des erreurs.
+ */
+@Entity
+@Getter
+@Setter
+@Accessors(chain = true)
+public class ErrorCount {
+
+    @EmbeddedId
+    private Key id;
+
+    @Column(nullable = false)
+    private long total;
+
+    @Embeddable
+    public record Key(
+            @Column(name = "bucket", nullable = false) LocalDateTime bucket,
+            @Column(name = "error_type", nullable = false) String errorType) implements Serializable {
+    }
+}
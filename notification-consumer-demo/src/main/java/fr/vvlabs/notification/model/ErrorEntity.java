@@ -9,20 +9,37 @@ import lombok.experimental.Accessors;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = {
+        // Agrégats et purge par date, rejeu par type (pagination par clé sur l'id)
+        @Index(name = "idx_error_entity_created_type", columnList = "created_at, error_type"),
+        @Index(name = "idx_error_entity_type_id", columnList = "error_type, id")
+})
 @Getter
 @Setter
 @EqualsAndHashCode(of = "id")
 @Accessors(chain = true)
 public class ErrorEntity {
 
+    // Séquence avec pré-allocation : contrairement à IDENTITY, permet les insertions JDBC par lots
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "error_entity_seq")
+    @SequenceGenerator(name = "error_entity_seq", sequenceName = "error_entity_seq", allocationSize = 50)
     private Long id;
 
+    // Contenu JSON compressé : quelques dizaines d'octets par message au lieu de plusieurs centaines
+    @Convert(converter = CompressedStringConverter.class)
+    @Column(length = 1_000_000)
     private String record;
 
+    // Message brut, remplacé à l'écriture par sa référence dans la table des messages (exceptionMessage)
+    @Transient
     private String exception;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "exception_id")
+    private ErrorMessage exceptionMessage;
+
+    @Column(name = "error_type")
     private String errorType;
 
     @Column(name = "created_at", nullable = false)
@@ -30,7 +47,9 @@ public class ErrorEntity {
 
     @PrePersist
     protected void onCreate() {
-        this.createdAt = LocalDateTime.now();
+        if (this.createdAt == null) {
+            this.createdAt = LocalDateTime.now();
+        }
     }
 }
 
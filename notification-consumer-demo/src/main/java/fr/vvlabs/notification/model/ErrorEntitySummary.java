@@ -0,0 +1,9 @@
+package fr.vvlabs.notification.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Erreur listée par l'API de consultation, sans son contenu compressé.
+ */
+public record ErrorEntitySummary(Long id, String errorType, LocalDateTime createdAt, String exception) {
+}
@@ -0,0 +1,33 @@
+package fr.vvlabs.notification.model;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+/**
+ * Message d'exception partagé par les ErrorEntity : un même message n'est stocké qu'une fois.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_error_message_hash", columnList = "message_hash"))
+@Getter
+@Setter
+@EqualsAndHashCode(of = "id")
+@Accessors(chain = true)
+public class ErrorMessage {
+
+    public static final int MAX_LENGTH = 2000;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "error_message_seq")
+    @SequenceGenerator(name = "error_message_seq", sequenceName = "error_message_seq", allocationSize = 50)
+    private Long id;
+
+    // Recherche par empreinte indexée, le message lui-même départageant les collisions
+    @Column(name = "message_hash", nullable = false)
+    private long hash;
+
+    @Column(length = MAX_LENGTH)
+    private String message;
+}
@@ -0,0 +1,29 @@
+package fr.vvlabs.notification.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.time.LocalDateTime;
+
+/**
+ * Position d'un rejeu de la DLT base de données : id de la dernière ErrorEntity traitée, pour reprendre
+ * un rejeu interrompu.
+ */
+@Entity
+@Getter
+@Setter
+@Accessors(chain = true)
+public class ReplayCheckpoint {
+
+    @Id
+    private String name;
+
+    private Long lastId;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,25 @@
+package fr.vvlabs.notification.repository;
+
+import fr.vvlabs.notification.model.ErrorCount;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.dlt-database", havingValue = "true")
+public interface ErrorCountRepository extends JpaRepository<ErrorCount, ErrorCount.Key> {
+
+    @Modifying
+    @Query("update ErrorCount c set c.total = c.total + :count where c.id = :id")
+    int increment(ErrorCount.Key id, long count);
+
+    @Query("select c from ErrorCount c where c.id.bucket >= :from order by c.id.bucket, c.id.errorType")
+    List<ErrorCount> findSince(LocalDateTime from);
+
+    @Modifying
+    @Query("delete from ErrorCount c where c.id.bucket < :cutoff")
+    int deleteBefore(LocalDateTime cutoff);
+}
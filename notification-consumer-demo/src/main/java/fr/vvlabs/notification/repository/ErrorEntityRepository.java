@@ -1,14 +1,35 @@
 package fr.vvlabs.notification.repository;
 
 import fr.vvlabs.notification.model.ErrorEntity;
+import fr.vvlabs.notification.model.ErrorEntitySummary;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @ConditionalOnProperty(name = "spring.kafka.consumer.notification.dlt-database", havingValue = "true")
 public interface ErrorEntityRepository extends JpaRepository<ErrorEntity, Long> {
 
     void deleteAllByCreatedAtBefore(LocalDateTime cutoff);
+
+    // Pagination par clé (id > dernier id lu) : coût constant quelle que soit la position, contrairement à un offset
+    List<ErrorEntity> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    List<ErrorEntity> findByErrorTypeAndIdGreaterThanOrderByIdAsc(String errorType, Long id, Limit limit);
+
+    @Query("select new fr.vvlabs.notification.model.ErrorEntitySummary(e.id, e.errorType, e.createdAt, m.message) "
+            + "from ErrorEntity e left join e.exceptionMessage m where e.id > :id order by e.id")
+    List<ErrorEntitySummary> findSummaries(Long id, Limit limit);
+
+    @Query("select new fr.vvlabs.notification.model.ErrorEntitySummary(e.id, e.errorType, e.createdAt, m.message) "
+            + "from ErrorEntity e left join e.exceptionMessage m where e.errorType = :errorType and e.id > :id order by e.id")
+    List<ErrorEntitySummary> findSummariesByErrorType(String errorType, Long id, Limit limit);
+
+    // Purge par lots : les ids sont lus par l'index de date, puis supprimés sans charger les entités
+    @Query("select e.id from ErrorEntity e where e.createdAt < :cutoff")
+    List<Long> findIdsCreatedBefore(LocalDateTime cutoff, Limit limit);
 }
 
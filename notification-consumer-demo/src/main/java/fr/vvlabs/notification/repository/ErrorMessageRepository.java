@@ -0,0 +1,20 @@
+package fr.vvlabs.notification.repository;
+
+import fr.vvlabs.notification.model.ErrorMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.dlt-database", havingValue = "true")
+public interface ErrorMessageRepository extends JpaRepository<ErrorMessage, Long> {
+
+    List<ErrorMessage> findByHash(long hash);
+
+    // Messages dont toutes les erreurs ont été purgées
+    @Modifying
+    @Query("delete from ErrorMessage m where not exists (select 1 from ErrorEntity e where e.exceptionMessage = m)")
+    int deleteUnreferenced();
+}
@@ -0,0 +1,9 @@
+package fr.vvlabs.notification.repository;
+
+import fr.vvlabs.notification.model.ReplayCheckpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.dlt-database", havingValue = "true")
+public interface ReplayCheckpointRepository extends JpaRepository<ReplayCheckpoint, String> {
+}
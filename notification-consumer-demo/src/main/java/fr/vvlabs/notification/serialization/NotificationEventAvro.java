@@ -0,0 +1,71 @@
+package fr.vvlabs.notification.serialization;
+
+import fr.vvlabs.notification.record.NotificationEvent;
+import io.confluent.kafka.schemaregistry.avro.AvroSchema;
+import io.confluent.kafka.schemaregistry.client.rest.exceptions.RestClientException;
+import io.confluent.kafka.schemaregistry.testutil.MockSchemaRegistry;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+/**
+ * Schéma Avro de NotificationEvent (avro/NotificationEvent.avsc) et conversion depuis / vers un GenericRecord.
+ */
+public final class NotificationEventAvro {
+
+    public static final String MOCK_SCHEMA_REGISTRY_PREFIX = "mock://";
+    public static final Schema SCHEMA = loadSchema();
+
+    private NotificationEventAvro() {
+    }
+
+    public static GenericRecord toRecord(NotificationEvent event) {
+        GenericRecord record = new GenericData.Record(SCHEMA);
+        record.put("event", event.getEvent());
+        record.put("userId", event.getUserId());
+        record.put("ipAddress", event.getIpAddress());
+        record.put("userAgent", event.getUserAgent());
+        record.put("messageNumber", event.getMessageNumber());
+        return record;
+    }
+
+    public static NotificationEvent fromRecord(GenericRecord record) {
+        NotificationEvent event = new NotificationEvent();
+        // Les chaînes Avro sont lues en Utf8
+        event.setEvent(Objects.toString(record.get("event"), null));
+        event.setUserId(Objects.toString(record.get("userId"), null));
+        event.setIpAddress(Objects.toString(record.get("ipAddress"), null));
+        event.setUserAgent(Objects.toString(record.get("userAgent"), null));
+        event.setMessageNumber((Integer) record.get("messageNumber"));
+        return event;
+    }
+
+    /**
+     * Un registre mock:// n'existe que dans la JVM courante. En enregistrant le schéma en premier sur le sujet du topic,
+     * le consommateur obtient le même identifiant (1) que le producteur, ce qui permet de faire tourner la démo hors ligne.
+     */
+    public static void registerInMockRegistry(String schemaRegistryUrl, String subject) {
+        if (!schemaRegistryUrl.startsWith(MOCK_SCHEMA_REGISTRY_PREFIX)) {
+            return;
+        }
+        String scope = schemaRegistryUrl.substring(MOCK_SCHEMA_REGISTRY_PREFIX.length());
+        try {
+            MockSchemaRegistry.getClientForScope(scope).register(subject, new AvroSchema(SCHEMA));
+        } catch (IOException | RestClientException e) {
+            throw new IllegalStateException("Enregistrement du schéma Avro impossible pour " + subject, e);
+        }
+    }
+
+    private static Schema loadSchema() {
+        try (InputStream schema = NotificationEventAvro.class.getResourceAsStream("/avro/NotificationEvent.avsc")) {
+            return new Schema.Parser().parse(schema);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
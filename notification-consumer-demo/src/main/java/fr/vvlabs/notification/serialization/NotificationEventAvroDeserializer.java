@@ -0,0 +1,40 @@
+package fr.vvlabs.notification.serialization;
+
+import fr.vvlabs.notification.record.NotificationEvent;
+import io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig;
+import io.confluent.kafka.serializers.KafkaAvroDeserializer;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.util.Map;
+
+/**
+ * Désérialise le format binaire Avro (schema registry) en NotificationEvent.
+ * Le schéma local sert de schéma de lecture : les évolutions compatibles du producteur sont résolues à la lecture.
+ */
+public class NotificationEventAvroDeserializer implements Deserializer<NotificationEvent> {
+
+    private final KafkaAvroDeserializer delegate = new KafkaAvroDeserializer();
+
+    public NotificationEventAvroDeserializer(String schemaRegistryUrl) {
+        delegate.configure(Map.of(AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, schemaRegistryUrl), false);
+    }
+
+    @Override
+    public NotificationEvent deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        Object value = delegate.deserialize(topic, data, NotificationEventAvro.SCHEMA);
+        if (value instanceof GenericRecord record) {
+            return NotificationEventAvro.fromRecord(record);
+        }
+        throw new SerializationException("Notification Avro inattendue sur le topic " + topic + " : " + value);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
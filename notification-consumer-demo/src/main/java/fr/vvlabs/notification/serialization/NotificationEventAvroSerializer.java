@@ -0,0 +1,33 @@
+package fr.vvlabs.notification.serialization;
+
+import fr.vvlabs.notification.record.NotificationEvent;
+import io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig;
+import io.confluent.kafka.serializers.KafkaAvroSerializer;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+
+/**
+ * Sérialise un NotificationEvent au format binaire Avro, le schéma étant référencé par son identifiant dans le registry.
+ */
+public class NotificationEventAvroSerializer implements Serializer<NotificationEvent> {
+
+    private final KafkaAvroSerializer delegate = new KafkaAvroSerializer();
+
+    public NotificationEventAvroSerializer(String schemaRegistryUrl) {
+        delegate.configure(Map.of(AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, schemaRegistryUrl), false);
+    }
+
+    @Override
+    public byte[] serialize(String topic, NotificationEvent event) {
+        if (event == null) {
+            return null;
+        }
+        return delegate.serialize(topic, NotificationEventAvro.toRecord(event));
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,33 @@
+package fr.vvlabs.notification.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import fr.vvlabs.notification.record.NotificationEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+
+/**
+ * Désérialise directement les octets du record en NotificationEvent, sans passer par une String intermédiaire.
+ */
+public class NotificationEventDeserializer implements Deserializer<NotificationEvent> {
+
+    private final ObjectReader objectReader;
+
+    public NotificationEventDeserializer(ObjectMapper objectMapper) {
+        this.objectReader = objectMapper.readerFor(NotificationEvent.class);
+    }
+
+    @Override
+    public NotificationEvent deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return objectReader.readValue(data);
+        } catch (IOException e) {
+            throw new SerializationException("Notification illisible sur le topic " + topic, e);
+        }
+    }
+}
@@ -1,41 +1,68 @@
 package fr.vvlabs.notification.service;
 
+import fr.vvlabs.notification.metrics.NotificationMetrics;
 import fr.vvlabs.notification.record.NotificationEvent;
-import lombok.RequiredArgsConstructor;
+import fr.vvlabs.notification.service.dedup.NotificationDeduplicator;
+import fr.vvlabs.notification.service.handler.NotificationHandler;
+import fr.vvlabs.notification.util.Futures;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class NotificationService {
 
-    private final SmirService smirService;
+    // Tag des événements sans handler : borne la cardinalité de notification.processing
+    private static final String UNKNOWN_EVENT = "unknown";
+
+    private final Map<String, NotificationHandler> handlers;
+    private final NotificationMetrics notificationMetrics;
+    private final Optional<NotificationDeduplicator> notificationDeduplicator;
+
+    public NotificationService(List<NotificationHandler> handlers, NotificationMetrics notificationMetrics,
+                               Optional<NotificationDeduplicator> notificationDeduplicator) {
+        this.handlers = handlers.stream()
+                .collect(Collectors.toUnmodifiableMap(NotificationHandler::getEventType, Function.identity()));
+        this.notificationMetrics = notificationMetrics;
+        this.notificationDeduplicator = notificationDeduplicator;
+        log.info("Handlers de notification : {}", this.handlers.keySet());
+    }
 
     public void buildAndSendNotification(NotificationEvent notificationEvent) {
-        log.info("Début de traitement Eip ENS notification : {}", notificationEvent);
+        Futures.await(buildAndSendNotificationAsync(notificationEvent));
+    }
 
-        switch (notificationEvent.getEvent()){
-            case "AJOUT_DOCUMENT" :
-                log.info("Ajout de document ... OK");
-
-                // Introduire une exception IOException aléatoire 2% du temps
-                if (Math.random() < 0.02) { // 1% de chances
-                    log.error("Erreur IOException simulée pendant l'ajout de document.");
-                    throw new RuntimeException("Erreur simulée lors de l'ajout du document.");
-                }
-                break;
-            case "OUVERTURE_ENS" :
-                log.info("Ouverture ENS ... appel API SMIR");
-                smirService.getSmirCoordonnees(notificationEvent.getUserId());
-                log.info("Ouverture ENS ... OK");
-                break;
-            case "INCITATION_ENROLEMENT" :
-                log.info("Incitation Enrolement : appel API SMIR");
-                smirService.getSmirCoordonnees(notificationEvent.getUserId());
-                log.info("Incitation Enrolement ... OK");
-                break;
+    public CompletableFuture<Void> buildAndSendNotificationAsync(NotificationEvent notificationEvent) {
+        if (notificationDeduplicator.isPresent() && notificationDeduplicator.get().isDuplicate(notificationEvent)) {
+            log.info("Notification déjà traitée, ignorée : {}", notificationEvent);
+            return CompletableFuture.completedFuture(null);
         }
-        log.info("Fin de traitement Eip ENS notification : {}", notificationEvent);
+        long start = System.nanoTime();
+        String event = notificationEvent.getEvent();
+        String eventType = event != null && handlers.containsKey(event) ? event : UNKNOWN_EVENT;
+        return buildNotification(notificationEvent).whenComplete((ignored, error) -> {
+            notificationMetrics.recordProcessing(eventType, error == null, System.nanoTime() - start);
+            if (error == null) {
+                notificationDeduplicator.ifPresent(deduplicator -> deduplicator.markProcessed(notificationEvent));
+            }
+        });
+    }
+
+    private CompletableFuture<Void> buildNotification(NotificationEvent notificationEvent) {
+        log.info("Début de traitement Eip ENS notification : {}", notificationEvent);
+
+        // Chaque type d'évènement est traité dans sa propre file (voir AbstractLaneNotificationHandler)
+        NotificationHandler handler = handlers.get(notificationEvent.getEvent());
+        CompletableFuture<Void> result = handler != null
+                ? handler.handle(notificationEvent)
+                : CompletableFuture.completedFuture(null);
+        return result.thenRun(() -> log.info("Fin de traitement Eip ENS notification : {}", notificationEvent));
     }
 }
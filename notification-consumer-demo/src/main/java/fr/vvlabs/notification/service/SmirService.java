@@ -1,27 +1,242 @@
 package fr.vvlabs.notification.service;
 
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.vvlabs.notification.exception.SmirClientRejectedException;
 import fr.vvlabs.notification.exception.SmirClientTooManyRequestException;
+import fr.vvlabs.notification.util.AdaptiveRateLimiter;
+import fr.vvlabs.notification.util.Futures;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class SmirService {
 
+    private final MeterRegistry meterRegistry;
+
+    @Value("${smir.max-in-flight:20}")
+    private int maxInFlight;
+    @Value("${smir.bulkhead-max-wait-ms:5000}")
+    private long bulkheadMaxWait;
+    @Value("${smir.rate-limiter.enabled:true}")
+    private boolean rateLimiterEnabled;
+    @Value("${smir.rate-limiter.initial-rate:10}")
+    private double rateLimiterInitialRate;
+    @Value("${smir.rate-limiter.min-rate:1}")
+    private double rateLimiterMinRate;
+    @Value("${smir.rate-limiter.max-rate:100}")
+    private double rateLimiterMaxRate;
+    @Value("${smir.rate-limiter.additive-increase:0.1}")
+    private double rateLimiterAdditiveIncrease;
+    @Value("${smir.rate-limiter.multiplicative-decrease:0.5}")
+    private double rateLimiterMultiplicativeDecrease;
+    @Value("${smir.rate-limiter.burst:10}")
+    private double rateLimiterBurst;
+    @Value("${smir.rate-limiter.decrease-cooldown-ms:1000}")
+    private long rateLimiterDecreaseCooldown;
+    @Value("${smir.rate-limiter.max-wait-ms:10000}")
+    private long rateLimiterMaxWait;
+    @Value("${smir.cache.enabled:true}")
+    private boolean cacheEnabled;
+    @Value("${smir.cache.max-size:100000}")
+    private long cacheMaxSize;
+    @Value("${smir.cache.ttl-ms:600000}")
+    private long cacheTtl;
+    @Value("${smir.cache.refresh-after-ms:300000}")
+    private long cacheRefreshAfter;
+    @Value("${smir.cache.negative-ttl-ms:5000}")
+    private long cacheNegativeTtl;
+    @Value("${smir.latency-ewma-alpha:0.2}")
+    private double latencyEwmaAlpha;
+    @Value("${smir.simulation.min-delay-ms:500}")
+    private long simulationMinDelay;
+    @Value("${smir.simulation.max-delay-ms:1200}")
+    private long simulationMaxDelay;
+    @Value("${smir.simulation.failure-rate:0.5}")
+    private double simulationFailureRate;
+
+    // Bulkhead SMIR : threads dédiés et nombre d'appels simultanés borné
+    private ExecutorService smirExecutor;
+    private Semaphore bulkhead;
+    // Limiteur de débit adaptatif, partagé par tous les threads du consommateur
+    private AdaptiveRateLimiter rateLimiter;
+    private Counter rateLimiterRejections;
+    // Cache des coordonnées (un seul appel en cours par userId) et des réponses 429 récentes
+    private AsyncLoadingCache<String, String> coordonneesCache;
+    private Cache<String, SmirClientTooManyRequestException> tooManyRequestsCache;
+    // Latence des appels SMIR (moyenne mobile exponentielle, bits d'un double)
+    private final AtomicLong latencyEwma = new AtomicLong(Double.doubleToLongBits(0));
+
+    @PostConstruct
+    public void init() {
+        smirExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        bulkhead = new Semaphore(maxInFlight);
+        Gauge.builder("smir.latency.ewma", this, SmirService::getLatencyEwmaMillis)
+                .description("Latence moyenne récente des appels SMIR (moyenne mobile exponentielle)")
+                .baseUnit("ms")
+                .register(meterRegistry);
+        if (rateLimiterEnabled) {
+            rateLimiter = new AdaptiveRateLimiter(
+                    rateLimiterInitialRate,
+                    rateLimiterMinRate,
+                    rateLimiterMaxRate,
+                    rateLimiterAdditiveIncrease,
+                    rateLimiterMultiplicativeDecrease,
+                    rateLimiterBurst,
+                    rateLimiterDecreaseCooldown);
+            Gauge.builder("smir.rate.limit", rateLimiter, AdaptiveRateLimiter::getRate)
+                    .description("Débit autorisé vers l'API SMIR (appels/s)")
+                    .register(meterRegistry);
+            rateLimiterRejections = Counter.builder("smir.rate.limit.rejections")
+                    .description("Appels SMIR rejetés localement par le limiteur de débit")
+                    .register(meterRegistry);
+        }
+        if (cacheEnabled) {
+            coordonneesCache = Caffeine.newBuilder()
+                    .maximumSize(cacheMaxSize)
+                    .expireAfterWrite(Duration.ofMillis(cacheTtl))
+                    .refreshAfterWrite(Duration.ofMillis(cacheRefreshAfter))
+                    .executor(smirExecutor)
+                    .recordStats()
+                    .buildAsync((userId, executor) -> loadSmirCoordonnees(userId));
+            tooManyRequestsCache = Caffeine.newBuilder()
+                    .maximumSize(cacheMaxSize)
+                    .expireAfterWrite(Duration.ofMillis(cacheNegativeTtl))
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, coordonneesCache.synchronous(), "smirCoordonnees");
+            CaffeineCacheMetrics.monitor(meterRegistry, tooManyRequestsCache, "smirTooManyRequests");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        smirExecutor.close();
+    }
+
     public String getSmirCoordonnees(String userId) {
-        // Générer un délai entre 500 ms et 1 200 ms
-        long delay = ThreadLocalRandom.current().nextLong(500, 1201);
+        return Futures.await(getSmirCoordonneesAsync(userId));
+    }
+
+    public CompletableFuture<String> getSmirCoordonneesAsync(String userId) {
+        if (!cacheEnabled) {
+            return loadSmirCoordonnees(userId);
+        }
+        // Coordonnées en cache (ou chargement en cours) : un 429 reçu lors d'un rafraîchissement anticipé ne les masque pas
+        CompletableFuture<String> cached = coordonneesCache.getIfPresent(userId);
+        if (cached != null) {
+            return cached;
+        }
+        SmirClientTooManyRequestException recentError = tooManyRequestsCache.getIfPresent(userId);
+        if (recentError != null) {
+            log.debug("Réponse 429 SMIR en cache pour {}", userId);
+            return CompletableFuture.failedFuture(new SmirClientTooManyRequestException("Réponse 429 SMIR en cache : " + recentError.getMessage()));
+        }
+        return coordonneesCache.get(userId);
+    }
+
+    private CompletableFuture<String> loadSmirCoordonnees(String userId) {
+        return CompletableFuture.supplyAsync(() -> callWithRateLimit(userId), smirExecutor)
+                .whenComplete((coordonnees, error) -> {
+                    // Seules les vraies réponses 429 sont mises en cache, pas les rejets locaux
+                    if (cacheEnabled
+                            && Futures.unwrap(error) instanceof SmirClientTooManyRequestException tooManyRequestException
+                            && !(tooManyRequestException instanceof SmirClientRejectedException)) {
+                        tooManyRequestsCache.put(userId, tooManyRequestException);
+                    }
+                });
+    }
+
+    private String callWithRateLimit(String userId) {
+        if (!rateLimiterEnabled) {
+            return callWithBulkhead(userId);
+        }
+        try {
+            if (!rateLimiter.tryAcquire(rateLimiterMaxWait)) {
+                rateLimiterRejections.increment();
+                throw new SmirClientRejectedException("Limiteur de débit SMIR : attente supérieure à " + rateLimiterMaxWait + "ms au débit de " + rateLimiter.getRate() + " appels/s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SmirClientRejectedException("Attente du limiteur de débit SMIR interrompue");
+        }
+        try {
+            String coordonnees = callWithBulkhead(userId);
+            rateLimiter.onSuccess();
+            return coordonnees;
+        } catch (SmirClientRejectedException e) {
+            throw e;
+        } catch (SmirClientTooManyRequestException e) {
+            rateLimiter.onThrottled();
+            throw e;
+        }
+    }
+
+    private String callWithBulkhead(String userId) {
+        try {
+            if (!bulkhead.tryAcquire(bulkheadMaxWait, TimeUnit.MILLISECONDS)) {
+                throw new SmirClientRejectedException("Bulkhead SMIR saturé : " + maxInFlight + " appels en cours depuis " + bulkheadMaxWait + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SmirClientRejectedException("Attente du bulkhead SMIR interrompue");
+        }
+        long start = System.nanoTime();
+        try {
+            return callSmir(userId);
+        } finally {
+            bulkhead.release();
+            recordLatency(System.nanoTime() - start);
+        }
+    }
+
+    private void recordLatency(long durationNanos) {
+        double millis = durationNanos / 1_000_000.0;
+        latencyEwma.getAndUpdate(bits -> Double.doubleToLongBits(
+                latencyEwmaAlpha * millis + (1 - latencyEwmaAlpha) * Double.longBitsToDouble(bits)));
+    }
+
+    public double getLatencyEwmaMillis() {
+        return Double.longBitsToDouble(latencyEwma.get());
+    }
+
+    /**
+     * Appels SMIR en cours (permis du bulkhead occupés).
+     */
+    public int getInFlight() {
+        return maxInFlight - bulkhead.availablePermits();
+    }
+
+    private String callSmir(String userId) {
+        // Générer un délai entre smir.simulation.min-delay-ms et max-delay-ms (500 ms et 1 200 ms par défaut)
+        long delay = ThreadLocalRandom.current().nextLong(simulationMinDelay, simulationMaxDelay + 1);
         try {
             Thread.sleep(delay);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-        // Décider aléatoirement de lancer une exception
-        boolean shouldThrowException = ThreadLocalRandom.current().nextBoolean();
+        // Décider aléatoirement de lancer une exception (une fois sur deux par défaut)
+        boolean shouldThrowException = ThreadLocalRandom.current().nextDouble() < simulationFailureRate;
         if (shouldThrowException) {
             throw new SmirClientTooManyRequestException("Exception lors de l'appel a l'API SMIR apres " + delay + "ms");
         }
@@ -1,18 +1,25 @@
 package fr.vvlabs.notification.service.consumer;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.vvlabs.notification.config.CommitStrategy;
 import fr.vvlabs.notification.config.ExceptionStrategy;
 import fr.vvlabs.notification.exception.SmirClientTooManyRequestException;
+import fr.vvlabs.notification.metrics.NotificationMetrics;
 import fr.vvlabs.notification.record.NotificationEvent;
 import fr.vvlabs.notification.service.NotificationService;
 import fr.vvlabs.notification.service.consumer.errors.NotificationSilentErrorHandler;
+import fr.vvlabs.notification.service.consumer.offset.OffsetWatermarkCommitter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.Message;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public abstract class AbstractNotificationConsumer {
@@ -22,28 +29,52 @@ public abstract class AbstractNotificationConsumer {
     @Autowired
     protected NotificationSilentErrorHandler notificationErrorHandler;
     @Autowired
-    protected ObjectMapper objectMapper;
-    @Autowired
     protected KafkaTemplate<String, Object> kafkaTemplate;
+    @Autowired
+    protected NotificationMetrics notificationMetrics;
+    @Autowired
+    protected OffsetWatermarkCommitter offsetWatermarkCommitter;
     @Value("${spring.kafka.consumer.notification.commit-strategy:auto}") // auto, manual, transaction
     protected String commitStrategy;
     @Value("${spring.kafka.consumer.notification.exception-strategy:throw}") // silent, throw
     protected String exceptionStrategy;
     @Value("${spring.kafka.consumer.notification.exception-strategy-smir:silent}") //  silent, throw
     protected String exceptionStrategySmir;
+    @Value("${spring.kafka.consumer.notification.output-topic:}")
+    protected String outputTopic;
 
-    protected long startTime = 0;
-    protected int totalMessageCount = 0;
-    protected int totalCommits = 0;
-    protected int totalDlt = 0;
-    protected int totalDltSmir = 0;
-    protected int totalTransactions = 0;
-    protected long totalProcessingTime = 0;
-    protected void processNotification(String notificationEns) throws Exception {
-        NotificationEvent notificationEvent = objectMapper.readValue(notificationEns, NotificationEvent.class);
+    protected void processNotification(NotificationEvent notificationEvent) {
         notificationService.buildAndSendNotification(notificationEvent);
     }
+
+    protected CompletableFuture<Void> processNotificationAsync(NotificationEvent notificationEvent) {
+        return notificationService.buildAndSendNotificationAsync(notificationEvent);
+    }
+
+    /**
+     * Publie la notification traitée sur le topic de sortie, dans la transaction en cours le cas échéant (stratégies
+     * transaction et eos). L'acquittement est attendu avant le commit des offsets, comme celui des envois DLT.
+     */
+    protected void publishNotification(Message<?> message) {
+        if (outputTopic.isEmpty()) {
+            return;
+        }
+        String key = message.getHeaders().get(KafkaHeaders.RECEIVED_KEY, String.class);
+        notificationErrorHandler.addPendingSend(kafkaTemplate.send(outputTopic, key, message.getPayload()));
+    }
+
     protected void commit(Acknowledgment acknowledgment) {
+        commit(acknowledgment, null);
+    }
+
+    protected void commit(Acknowledgment acknowledgment, Consumer<?, ?> consumer) {
+        if (consumer != null && offsetWatermarkCommitter.isEnabled()) {
+            // Traitement hors ordre : seul le watermark contigu de chaque partition est commité, à la cadence configurée
+            offsetWatermarkCommitter.commitIfDue(consumer);
+            return;
+        }
+        // Les erreurs en attente d'écriture doivent être persistées avant le commit des offsets
+        notificationErrorHandler.flush();
         log.info("Commit strategy {} ...", commitStrategy);
         if (CommitStrategy.MANUAL.equals(commitStrategy)) {
             log.info("\tcommit !");
@@ -52,18 +83,31 @@ public abstract class AbstractNotificationConsumer {
             } else {
                 log.error("\tacknowledgment is null.");
             }
-            totalCommits++;
+            notificationMetrics.recordCommit();
         } else {
             log.info("\tskipping commit.");
         }
     }
 
     protected void updateTransactionCount() {
-        totalTransactions++;
+        notificationMetrics.recordTransaction();
+    }
+
+    // Stratégie eos : la transaction est commitée par le container, après le retour du listener
+    protected void updateTransactionCountOnCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    updateTransactionCount();
+                }
+            });
+        }
     }
-    protected void processSmirError(Message<String> message, SmirClientTooManyRequestException e) {
+
+    protected void processSmirError(Message<?> message, SmirClientTooManyRequestException e) {
         log.warn("Erreur due à l'API SMIR  : {}", e.getMessage());
-        totalDltSmir++;
+        notificationMetrics.recordError(NotificationMetrics.SMIR);
         if(ExceptionStrategy.THROW.equals(exceptionStrategySmir)) {
             throw new RuntimeException(e);
         } else {
@@ -71,9 +115,9 @@ public abstract class AbstractNotificationConsumer {
         }
     }
 
-    protected void processGenericError(Message<String> message, Exception e) {
+    protected void processGenericError(Message<?> message, Exception e) {
         log.warn("Erreur generique  : {}", e.getMessage());
-        totalDlt++;
+        notificationMetrics.recordError(NotificationMetrics.GENERIC);
         if(ExceptionStrategy.THROW.equals(exceptionStrategy)) {
             throw new RuntimeException(e);
         } else {
@@ -81,9 +125,35 @@ public abstract class AbstractNotificationConsumer {
         }
     }
 
+    // Fin d'un traitement hors ordre, appelée sur le thread du consommateur. Toujours en DLT, quelle que soit
+    // l'exception-strategy : une exception remonterait dans le listener d'un autre record. Retourne les envois lancés,
+    // dont l'acquittement conditionne le commit de l'offset.
+    protected CompletableFuture<Void> completeNotification(Message<?> message, Throwable error) {
+        return notificationErrorHandler.captureSends(() -> {
+            if (error instanceof SmirClientTooManyRequestException smirException) {
+                log.warn("Erreur due à l'API SMIR  : {}", smirException.getMessage());
+                notificationMetrics.recordError(NotificationMetrics.SMIR);
+                notificationErrorHandler.sendToDltSmir(message, smirException);
+            } else if (error != null) {
+                log.warn("Erreur generique  : {}", error.getMessage());
+                notificationMetrics.recordError(NotificationMetrics.GENERIC);
+                notificationErrorHandler.sendToDlt(message, error instanceof Exception exception ? exception : new RuntimeException(error));
+            } else {
+                publishNotification(message);
+            }
+            recordEndToEndLatency(message);
+        });
+    }
+
     protected void initStartTime() {
-        if (totalMessageCount == 0) {
-            startTime = System.currentTimeMillis();
+        notificationMetrics.markStarted();
+    }
+
+    // Latence de bout en bout : du timestamp du record (production) à la fin du traitement
+    protected void recordEndToEndLatency(Message<?> message) {
+        Long timestamp = message.getHeaders().get(KafkaHeaders.RECEIVED_TIMESTAMP, Long.class);
+        if (timestamp != null) {
+            notificationMetrics.recordEndToEndLatency(timestamp);
         }
     }
 
@@ -91,19 +161,16 @@ public abstract class AbstractNotificationConsumer {
         updateTime(1);
     }
     protected void updateTime(int nbMessages) {
-        totalMessageCount += nbMessages;
-        // Calculer et accumuler le temps de traitement total après chaque message
-        totalProcessingTime = System.currentTimeMillis() - startTime;
+        notificationMetrics.recordMessages(nbMessages);
         // Loguer le temps total de traitement pour le lot de messages
-        log.info("Total time for {} notifications: {} ms", totalMessageCount, totalProcessingTime);
+        log.info("Total time for {} notifications: {} ms", notificationMetrics.getMessageCount(), notificationMetrics.getElapsedMillis());
         if (CommitStrategy.MANUAL.equals(commitStrategy)) {
-            log.info("Total commits : {}", totalCommits);
+            log.info("Total commits : {}", notificationMetrics.getCommitCount());
         }
-        if (CommitStrategy.TRANSACTION.equals(commitStrategy)) {
-            log.info("Total transactions : {} ", totalTransactions);
+        if (CommitStrategy.TRANSACTION.equals(commitStrategy) || CommitStrategy.EOS.equals(commitStrategy)) {
+            log.info("Total transactions : {} ", notificationMetrics.getTransactionCount());
         }
-        log.info("Total DLT :{} ", totalDlt);
-        log.info("Total DLT SMIR : {} ", totalDltSmir);
+        log.info("Total DLT :{} ", notificationMetrics.getErrorCount(NotificationMetrics.GENERIC));
+        log.info("Total DLT SMIR : {} ", notificationMetrics.getErrorCount(NotificationMetrics.SMIR));
     }
 }
-
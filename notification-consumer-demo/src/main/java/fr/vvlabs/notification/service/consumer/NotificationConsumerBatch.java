@@ -3,12 +3,18 @@ package fr.vvlabs.notification.service.consumer;
 import fr.vvlabs.notification.config.CommitStrategy;
 import fr.vvlabs.notification.config.ConsumerMode;
 import fr.vvlabs.notification.exception.SmirClientTooManyRequestException;
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.service.consumer.parallel.KeyOrderedBatchProcessor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 
@@ -20,16 +26,23 @@ import java.util.List;
 @Slf4j
 public class NotificationConsumerBatch extends AbstractNotificationConsumer {
 
+    @Autowired
+    protected KeyOrderedBatchProcessor keyOrderedBatchProcessor;
+    @Value("${spring.kafka.consumer.notification.parallel:false}")
+    protected boolean parallel;
+
     @KafkaListener(
+            id = NotificationListeners.AUTO,
             groupId = "${spring.kafka.consumer.notification.group-id}",
             topics = "${spring.kafka.consumer.notification.topic}",
             containerFactory = "notificationKafkaListenerContainerFactory",
             autoStartup = "#{@kafkaConsumerConfig.isAutoStartup()}"
     )
-    public void receiveBatchAuto(List<Message<String>> notifications) throws Exception {
+    public void receiveBatchAuto(List<Message<NotificationEvent>> notifications) throws Exception {
         log.info("Lot de notifications reçu, nombre de messages : {}, stratégie={}", notifications.size(), commitStrategy);
 
         initStartTime();
+        notificationMetrics.recordBatchSize(notifications.size());
 
         switch (commitStrategy) {
             case CommitStrategy.AUTO, CommitStrategy.MANUAL:
@@ -38,23 +51,29 @@ public class NotificationConsumerBatch extends AbstractNotificationConsumer {
             case CommitStrategy.TRANSACTION:
                 handleWithTransaction(notifications);
                 break;
+            case CommitStrategy.EOS:
+                handleWithEos(notifications);
+                break;
             default:
                 throw new IllegalStateException("Unsupported commit strategy " + commitStrategy);
         }
 
+        notifications.forEach(this::recordEndToEndLatency);
         updateTime(notifications.size());
     }
 
     @KafkaListener(
+            id = NotificationListeners.MANUAL,
             groupId = "${spring.kafka.consumer.notification.group-id}",
             topics = "${spring.kafka.consumer.notification.topic}",
             containerFactory = "notificationKafkaListenerContainerFactory",
             autoStartup = "#{@kafkaConsumerConfig.isManualStartup()}"
     )
-    public void receiveBatchManual(List<Message<String>> notifications, Acknowledgment acknowledgment) {
+    public void receiveBatchManual(List<Message<NotificationEvent>> notifications, Acknowledgment acknowledgment) {
         log.info("Lot de notifications reçu, nombre de messages : {}, stratégie={}", notifications.size(), commitStrategy);
 
         initStartTime();
+        notificationMetrics.recordBatchSize(notifications.size());
 
         switch (commitStrategy) {
             case CommitStrategy.AUTO, CommitStrategy.MANUAL:
@@ -63,47 +82,123 @@ public class NotificationConsumerBatch extends AbstractNotificationConsumer {
             case CommitStrategy.TRANSACTION:
                 handleWithTransaction(notifications);
                 break;
+            case CommitStrategy.EOS:
+                handleWithEos(notifications);
+                break;
             default:
                 throw new IllegalStateException("Unsupported commit strategy " + commitStrategy);
         }
 
+        notifications.forEach(this::recordEndToEndLatency);
         updateTime(notifications.size());
     }
 
-    private void handleWithCommit(List<Message<String>> notifications, Acknowledgment acknowledgment) {
+    private void handleWithCommit(List<Message<NotificationEvent>> notifications, Acknowledgment acknowledgment) {
         log.info("handleWithCommit");
-        for (Message<String> message : notifications) {
-            try {
-                String notificationEns = message.getPayload();
-                processNotification(notificationEns);
-            } catch (SmirClientTooManyRequestException e) {
-                processSmirError(message, e);
-            } catch (Exception e) {
-                processGenericError(message, e);
-            }
+        int readableCount = countReadable(notifications);
+        processBatch(notifications.subList(0, readableCount));
+        if (readableCount < notifications.size()) {
+            notificationErrorHandler.flush();
+            throw unreadableNotification(notifications, readableCount);
         }
         commit(acknowledgment);
     }
 
-    private void handleWithTransaction(List<Message<String>> notifications) {
+    private void handleWithTransaction(List<Message<NotificationEvent>> notifications) {
         log.info("handleWithTransaction");
 
         // Traiter l'ensemble du lot dans une transaction Kafka
+        int readableCount = countReadable(notifications);
         kafkaTemplate.executeInTransaction(operations -> {
-            for (Message<String> message : notifications) {
-                try {
-                    String notificationEns = message.getPayload();
-                    processNotification(notificationEns);
-                } catch (SmirClientTooManyRequestException e) {
-                    processSmirError(message, e);
-                } catch (Exception e) {
-                    processGenericError(message, e);
-                }
-            }
+            processBatch(notifications.subList(0, readableCount));
+            notificationErrorHandler.flush();
             log.info("Transaction Kafka complétée avec succès pour le lot");
             // La transaction est commitée à ce stade si aucune exception bloquante n'a été levée
             updateTransactionCount();
             return null;
         });
+        if (readableCount < notifications.size()) {
+            throw unreadableNotification(notifications, readableCount);
+        }
+    }
+
+    private void handleWithEos(List<Message<NotificationEvent>> notifications) {
+        log.info("handleWithEos");
+        // Transaction démarrée par le container : sorties, envois DLT et offsets du lot sont commités ensemble
+        int readableCount = countReadable(notifications);
+        processBatch(notifications.subList(0, readableCount));
+        notificationErrorHandler.flush();
+        if (readableCount < notifications.size()) {
+            // Rollback du lot entier, sorties comprises : l'AfterRollbackProcessor relit puis récupère le lot
+            throw unreadableNotification(notifications, readableCount);
+        }
+        updateTransactionCountOnCommit();
+    }
+
+    /**
+     * Nombre de messages lisibles en tête de lot. Un message que l'ErrorHandlingDeserializer n'a pas pu lire
+     * arrive sans NotificationEvent : le lot est traité jusqu'à lui, puis le gestionnaire d'erreurs du container
+     * l'envoie en DLT (octets d'origine) et relivre la suite du lot.
+     */
+    private int countReadable(List<Message<NotificationEvent>> notifications) {
+        for (int i = 0; i < notifications.size(); i++) {
+            if (!(notifications.get(i).getPayload() instanceof NotificationEvent)) {
+                return i;
+            }
+        }
+        return notifications.size();
+    }
+
+    private BatchListenerFailedException unreadableNotification(List<Message<NotificationEvent>> notifications, int index) {
+        log.warn("Message illisible à l'index {} du lot, partition={}", index,
+                notifications.get(index).getHeaders().get(KafkaHeaders.RECEIVED_PARTITION));
+        return new BatchListenerFailedException("Message illisible", index);
+    }
+
+    private void processBatch(List<Message<NotificationEvent>> notifications) {
+        if (parallel) {
+            processInParallel(notifications);
+        } else {
+            processSequentially(notifications);
+        }
+    }
+
+    private void processSequentially(List<Message<NotificationEvent>> notifications) {
+        for (Message<NotificationEvent> message : notifications) {
+            try {
+                processNotification(message.getPayload());
+                publishNotification(message);
+            } catch (SmirClientTooManyRequestException e) {
+                processSmirError(message, e);
+            } catch (Exception e) {
+                processGenericError(message, e);
+            }
+        }
+    }
+
+    private void processInParallel(List<Message<NotificationEvent>> notifications) {
+        // Les messages d'une même clé sont traités dans l'ordre, les clés différentes en parallèle
+        List<Exception> errors = keyOrderedBatchProcessor.process(
+                notifications,
+                NotificationConsumerBatch::orderingKey,
+                message -> processNotificationAsync(message.getPayload()));
+
+        // Les erreurs sont traitées sur le thread du listener (DLT, transaction en cours), dans l'ordre du lot
+        for (int i = 0; i < notifications.size(); i++) {
+            Exception error = errors.get(i);
+            Message<NotificationEvent> message = notifications.get(i);
+            if (error instanceof SmirClientTooManyRequestException smirException) {
+                processSmirError(message, smirException);
+            } else if (error != null) {
+                processGenericError(message, error);
+            } else {
+                publishNotification(message);
+            }
+        }
+    }
+
+    private static Object orderingKey(Message<NotificationEvent> message) {
+        Object key = message.getHeaders().get(KafkaHeaders.RECEIVED_KEY);
+        return key != null ? key : message.getPayload().getUserId();
     }
-}
\ No newline at end of file
+}
@@ -3,7 +3,11 @@ package fr.vvlabs.notification.service.consumer;
 import fr.vvlabs.notification.config.CommitStrategy;
 import fr.vvlabs.notification.config.ConsumerMode;
 import fr.vvlabs.notification.exception.SmirClientTooManyRequestException;
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.service.consumer.transaction.RecordTransactionAggregator;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
@@ -15,13 +19,17 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class NotificationConsumerRecord extends AbstractNotificationConsumer {
 
+    @Autowired
+    protected RecordTransactionAggregator recordTransactionAggregator;
+
     @KafkaListener(
+            id = NotificationListeners.AUTO,
             groupId = "${spring.kafka.consumer.notification.group-id}",
             topics = "${spring.kafka.consumer.notification.topic}",
             containerFactory = "notificationKafkaListenerContainerFactory",
             autoStartup = "#{@kafkaConsumerConfig.isAutoStartup()}"
     )
-    public void receiveAuto(Message<String> notificationEns) throws Exception {
+    public void receiveAuto(Message<NotificationEvent> notificationEns) throws Exception {
         log.info("Notification reçue={}, strategie={}", notificationEns.getPayload(), commitStrategy);
 
         initStartTime();
@@ -33,42 +41,57 @@ public class NotificationConsumerRecord extends AbstractNotificationConsumer {
             case CommitStrategy.TRANSACTION:
                 handleWithTransaction(notificationEns);
                 break;
+            case CommitStrategy.EOS:
+                handleWithEos(notificationEns);
+                break;
             default:
                 throw new IllegalStateException("Unsupported commit strategy " + commitStrategy);
         }
 
+        recordEndToEndLatency(notificationEns);
         updateTime();
     }
 
     @KafkaListener(
+            id = NotificationListeners.MANUAL,
             groupId = "${spring.kafka.consumer.notification.group-id}",
             topics = "${spring.kafka.consumer.notification.topic}",
             containerFactory = "notificationKafkaListenerContainerFactory",
             autoStartup = "#{@kafkaConsumerConfig.isManualStartup()}"
     )
-    public void receiveManual(Message<String> notificationEns, Acknowledgment acknowledgment) {
+    public void receiveManual(Message<NotificationEvent> notificationEns, Acknowledgment acknowledgment, Consumer<?, ?> consumer) {
         log.info("Notification reçue={}, strategie={}", notificationEns.getPayload(), commitStrategy);
 
         initStartTime();
 
+        if (offsetWatermarkCommitter.isEnabled()) {
+            // La latence de bout en bout est mesurée à la fin du traitement, dans completeNotification
+            handleOutOfOrder(notificationEns, consumer);
+            updateTime();
+            return;
+        }
+
         switch (commitStrategy) {
             case CommitStrategy.AUTO, CommitStrategy.MANUAL:
                 handleWithCommit(notificationEns, acknowledgment);
                 break;
             case CommitStrategy.TRANSACTION:
-                handleWithTransaction(notificationEns);
+                // Transactions agrégées : le listener manuel est démarré pour disposer de l'acquittement
+                handleWithAggregatedTransaction(notificationEns, acknowledgment);
                 break;
             default:
                 throw new IllegalStateException("Unsupported commit strategy " + commitStrategy);
         }
 
+        recordEndToEndLatency(notificationEns);
         updateTime();
     }
 
-    private void handleWithCommit(Message<String> notificationEns, Acknowledgment acknowledgment) {
+    private void handleWithCommit(Message<NotificationEvent> notificationEns, Acknowledgment acknowledgment) {
         log.info("handleWithCommit");
         try {
             processNotification(notificationEns.getPayload());
+            publishNotification(notificationEns);
         } catch (SmirClientTooManyRequestException e) {
             processSmirError(notificationEns, e);
         } catch (Exception e) {
@@ -77,11 +100,20 @@ public class NotificationConsumerRecord extends AbstractNotificationConsumer {
         commit(acknowledgment);
     }
 
-    private void handleWithTransaction(Message<String> notificationEns) {
+    private void handleOutOfOrder(Message<NotificationEvent> notificationEns, Consumer<?, ?> consumer) {
+        log.info("handleOutOfOrder");
+        offsetWatermarkCommitter.submit(notificationEns, consumer,
+                () -> processNotificationAsync(notificationEns.getPayload()),
+                this::completeNotification);
+        commit(null, consumer);
+    }
+
+    private void handleWithTransaction(Message<NotificationEvent> notificationEns) {
         log.info("handleWithTransaction");
         kafkaTemplate.executeInTransaction(operations -> {
             try {
                 processNotification(notificationEns.getPayload());
+                publishNotification(notificationEns);
                 log.info("Transaction Kafka complétée avec succès");
             } catch (SmirClientTooManyRequestException e) {
                 log.warn("Erreur due à l'API SMIR  : {}", e.getMessage());
@@ -90,9 +122,39 @@ public class NotificationConsumerRecord extends AbstractNotificationConsumer {
                 log.warn("Erreur générique  : {}", e.getMessage());
                 processGenericError(notificationEns, e);
             }
+            notificationErrorHandler.flush();
             // La transaction est commitée à ce stade si aucune exception bloquante n'a été levée
             updateTransactionCount();
             return null;
         });
     }
+
+    private void handleWithEos(Message<NotificationEvent> notificationEns) {
+        log.info("handleWithEos");
+        // Transaction démarrée par le container : sortie, envois DLT et offset du record sont commités ensemble
+        try {
+            processNotification(notificationEns.getPayload());
+            publishNotification(notificationEns);
+        } catch (SmirClientTooManyRequestException e) {
+            processSmirError(notificationEns, e);
+        } catch (Exception e) {
+            processGenericError(notificationEns, e);
+        }
+        notificationErrorHandler.flush();
+        updateTransactionCountOnCommit();
+    }
+
+    private void handleWithAggregatedTransaction(Message<NotificationEvent> notificationEns, Acknowledgment acknowledgment) {
+        log.info("handleWithAggregatedTransaction");
+        recordTransactionAggregator.execute(notificationEns, acknowledgment, () -> {
+            try {
+                processNotification(notificationEns.getPayload());
+                publishNotification(notificationEns);
+            } catch (SmirClientTooManyRequestException e) {
+                processSmirError(notificationEns, e);
+            } catch (Exception e) {
+                processGenericError(notificationEns, e);
+            }
+        });
+    }
 }
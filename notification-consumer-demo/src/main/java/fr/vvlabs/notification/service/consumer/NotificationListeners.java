@@ -0,0 +1,29 @@
+package fr.vvlabs.notification.service.consumer;
+
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.util.List;
+
+/**
+ * Identifiants des containers du topic de notifications (un seul des deux est démarré, selon la stratégie de commit).
+ */
+public class NotificationListeners {
+
+    public static final String AUTO = "notification-auto";
+    public static final String MANUAL = "notification-manual";
+
+    /**
+     * Container démarré du topic de notifications, null s'il n'y en a pas (arrêté, en cours de redémarrage).
+     */
+    public static ConcurrentMessageListenerContainer<?, ?> findRunning(KafkaListenerEndpointRegistry registry) {
+        for (String id : List.of(AUTO, MANUAL)) {
+            MessageListenerContainer container = registry.getListenerContainer(id);
+            if (container instanceof ConcurrentMessageListenerContainer<?, ?> concurrent && concurrent.isRunning()) {
+                return concurrent;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,136 @@
+package fr.vvlabs.notification.service.consumer.backpressure;
+
+import fr.vvlabs.notification.service.SmirService;
+import fr.vvlabs.notification.service.consumer.NotificationListeners;
+import fr.vvlabs.notification.service.handler.NotificationHandler;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contre-pression : met en pause les partitions du container quand l'aval sature (files des handlers pleines,
+ * latence SMIR élevée) et les reprend une fois la pression retombée sous un second seuil (hystérésis).
+ * Le container continue d'appeler poll() pendant la pause : le consommateur reste dans le groupe.
+ * Les types d'évènements étant répartis sur toutes les partitions (clé = userId), toutes les partitions
+ * assignées sont concernées.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.backpressure.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class BackpressureController {
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final List<NotificationHandler> handlers;
+    private final SmirService smirService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${spring.kafka.consumer.notification.backpressure.pause-threshold:0.8}")
+    private double pauseThreshold;
+    @Value("${spring.kafka.consumer.notification.backpressure.resume-threshold:0.5}")
+    private double resumeThreshold;
+    @Value("${spring.kafka.consumer.notification.backpressure.smir-latency-ms:2000}")
+    private double smirLatencyThreshold;
+    @Value("${spring.kafka.consumer.notification.backpressure.min-pause-ms:1000}")
+    private long minPause;
+
+    // Partitions mises en pause par ce composant, avec le début de leur pause (ms)
+    private final Map<TopicPartition, Long> pausedSince = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Timer> pauseTimers = new ConcurrentHashMap<>();
+    private volatile double pressure;
+    private volatile boolean paused;
+    private long pausedAt;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("notification.backpressure.pressure", this, BackpressureController::getPressure)
+                .description("Pression aval : occupation maximale des files des handlers ou latence SMIR rapportée au seuil")
+                .register(meterRegistry);
+        Gauge.builder("notification.backpressure.paused", pausedSince, Map::size)
+                .description("Partitions en pause pour contre-pression")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${spring.kafka.consumer.notification.backpressure.interval-ms:200}")
+    public void check() {
+        pressure = measurePressure();
+        ConcurrentMessageListenerContainer<?, ?> container = NotificationListeners.findRunning(registry);
+        if (container == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!paused && pressure >= pauseThreshold) {
+            log.warn("Aval saturé (pression={}), mise en pause des partitions", String.format("%.2f", pressure));
+            paused = true;
+            pausedAt = now;
+        } else if (paused && pressure <= resumeThreshold && now - pausedAt >= minPause) {
+            log.info("Pression retombée ({}), reprise des partitions après {} ms", String.format("%.2f", pressure), now - pausedAt);
+            paused = false;
+            resumeAll(container, now);
+            return;
+        }
+        if (paused) {
+            // Aussi les partitions assignées depuis la pause (rééquilibrage, redémarrage du container)
+            pauseAssigned(container, now);
+        }
+    }
+
+    private double measurePressure() {
+        // La latence n'est mise à jour qu'à la fin d'un appel : sans appel en cours (partitions en pause), elle
+        // resterait figée à sa valeur de la mise en pause et empêcherait toute reprise
+        double max = smirService.getInFlight() > 0 ? smirService.getLatencyEwmaMillis() / smirLatencyThreshold : 0;
+        for (NotificationHandler handler : handlers) {
+            max = Math.max(max, handler.getSaturation());
+        }
+        return max;
+    }
+
+    private void pauseAssigned(ConcurrentMessageListenerContainer<?, ?> container, long now) {
+        Collection<TopicPartition> assigned = container.getAssignedPartitions();
+        if (assigned == null) {
+            return;
+        }
+        for (TopicPartition partition : assigned) {
+            if (!container.isPartitionPauseRequested(partition)) {
+                container.pausePartition(partition);
+                pausedSince.putIfAbsent(partition, now);
+            }
+        }
+    }
+
+    private void resumeAll(ConcurrentMessageListenerContainer<?, ?> container, long now) {
+        pausedSince.forEach((partition, since) -> {
+            container.resumePartition(partition);
+            pauseTimer(partition).record(now - since, TimeUnit.MILLISECONDS);
+        });
+        pausedSince.clear();
+    }
+
+    private Timer pauseTimer(TopicPartition partition) {
+        return pauseTimers.computeIfAbsent(partition, key -> Timer.builder("notification.partition.paused")
+                .description("Durée de pause d'une partition pour contre-pression")
+                .tag("partition", key.toString())
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    public double getPressure() {
+        return pressure;
+    }
+}
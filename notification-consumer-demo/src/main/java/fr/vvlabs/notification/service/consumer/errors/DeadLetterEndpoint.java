@@ -0,0 +1,69 @@
+package fr.vvlabs.notification.service.consumer.errors;
+
+import fr.vvlabs.notification.model.ErrorCount;
+import fr.vvlabs.notification.model.ErrorEntitySummary;
+import fr.vvlabs.notification.repository.ErrorCountRepository;
+import fr.vvlabs.notification.repository.ErrorEntityRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consultation de la DLT base de données :
+ * GET /actuator/deadletters?errorType=SMIR&after=&lt;id&gt;&size=100 liste les erreurs par pages (pagination par clé,
+ * {@code next} à passer en {@code after} pour la page suivante) ;
+ * GET /actuator/deadletters/counts?minutes=60 donne le nombre d'erreurs par minute et par type.
+ */
+@Component
+@Endpoint(id = "deadletters")
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.dlt-database", havingValue = "true")
+@RequiredArgsConstructor
+public class DeadLetterEndpoint {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String COUNTS = "counts";
+
+    private final ErrorEntityRepository errorEntityRepository;
+    private final ErrorCountRepository errorCountRepository;
+
+    @ReadOperation
+    public Map<String, Object> errors(@Nullable String errorType, @Nullable Long after, @Nullable Integer size) {
+        long afterId = after != null ? after : 0;
+        Limit limit = Limit.of(Math.clamp(size != null ? size : 100, 1, MAX_PAGE_SIZE));
+        List<ErrorEntitySummary> errors = errorType == null
+                ? errorEntityRepository.findSummaries(afterId, limit)
+                : errorEntityRepository.findSummariesByErrorType(errorType, afterId, limit);
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("errors", errors);
+        page.put("next", errors.isEmpty() ? null : errors.getLast().id());
+        return page;
+    }
+
+    // Lu dans la table des compteurs (une ligne par minute et par type), quel que soit le volume d'erreurs
+    @ReadOperation
+    public Map<LocalDateTime, Map<String, Long>> counts(@Selector String view, @Nullable Integer minutes) {
+        if (!COUNTS.equals(view)) {
+            throw new InvalidEndpointRequestException("Unknown view: " + view, "Unknown view");
+        }
+        LocalDateTime from = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES).minusMinutes(minutes != null ? minutes : 60);
+        Map<LocalDateTime, Map<String, Long>> counts = new TreeMap<>();
+        for (ErrorCount errorCount : errorCountRepository.findSince(from)) {
+            counts.computeIfAbsent(errorCount.getId().bucket(), bucket -> new TreeMap<>())
+                    .put(errorCount.getId().errorType(), errorCount.getTotal());
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,87 @@
+package fr.vvlabs.notification.service.consumer.errors;
+
+import fr.vvlabs.notification.repository.ErrorCountRepository;
+import fr.vvlabs.notification.repository.ErrorEntityRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Purge des erreurs plus anciennes que {@code dlt-database-retention-ms}, par lots de
+ * {@code dlt-database-purge-batch-size} lignes dans des transactions courtes : l'écriture des nouvelles erreurs
+ * n'est pas bloquée pendant la purge d'un gros volume.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.dlt-database", havingValue = "true")
+@Slf4j
+public class ErrorEntityRetention {
+
+    private final ErrorEntityRepository errorEntityRepository;
+    private final ErrorCountRepository errorCountRepository;
+    private final ErrorEntityWriteBehindSink errorEntitySink;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter purged;
+    private final long retention;
+    private final int batchSize;
+
+    public ErrorEntityRetention(
+            ErrorEntityRepository errorEntityRepository,
+            ErrorCountRepository errorCountRepository,
+            ErrorEntityWriteBehindSink errorEntitySink,
+            @Qualifier("transactionManager") PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${spring.kafka.consumer.notification.dlt-database-retention-ms:86400000}") long retention,
+            @Value("${spring.kafka.consumer.notification.dlt-database-purge-batch-size:1000}") int batchSize) {
+        this.errorEntityRepository = errorEntityRepository;
+        this.errorCountRepository = errorCountRepository;
+        this.errorEntitySink = errorEntitySink;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.purged = Counter.builder("notification.dlt.purged")
+                .description("Erreurs supprimées de la DLT base de données par la rétention")
+                .register(meterRegistry);
+        this.retention = retention;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${spring.kafka.consumer.notification.dlt-database-purge-interval-ms:60000}")
+    public void purge() {
+        if (retention <= 0) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusNanos(retention * 1_000_000);
+        try {
+            long total = 0;
+            int deleted;
+            do {
+                deleted = transactionTemplate.execute(status -> {
+                    List<Long> ids = errorEntityRepository.findIdsCreatedBefore(cutoff, Limit.of(batchSize));
+                    if (!ids.isEmpty()) {
+                        errorEntityRepository.deleteAllByIdInBatch(ids);
+                    }
+                    return ids.size();
+                });
+                purged.increment(deleted);
+                total += deleted;
+            } while (deleted == batchSize);
+
+            if (total > 0) {
+                transactionTemplate.executeWithoutResult(status -> errorCountRepository.deleteBefore(cutoff));
+                int messages = errorEntitySink.purgeUnreferencedMessages();
+                log.info("Rétention DLT base de données : {} erreurs et {} messages supprimés avant {}", total, messages, cutoff);
+            }
+        } catch (RuntimeException e) {
+            log.error("Echec de la purge de la DLT base de données : {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package fr.vvlabs.notification.service.consumer.errors;
+
+import fr.vvlabs.notification.model.ErrorCount;
+import fr.vvlabs.notification.model.ErrorEntity;
+import fr.vvlabs.notification.repository.ErrorCountRepository;
+import fr.vvlabs.notification.repository.ErrorEntityRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * DLT base de données en écriture différée : les ErrorEntity sont mises en file (bornée)
+ * puis insérées par lots, sur seuil de taille, périodiquement, ou explicitement via flush()
+ * avant le commit des offsets et à l'arrêt de l'application. Chaque lot référence les messages d'exception
+ * partagés (ErrorMessageInterner) et incrémente les compteurs par type et par minute (ErrorCount).
+ */
+@Component
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.dlt-database", havingValue = "true")
+@Slf4j
+public class ErrorEntityWriteBehindSink {
+
+    private final ErrorEntityRepository errorEntityRepository;
+    private final ErrorCountRepository errorCountRepository;
+    private final ErrorMessageInterner errorMessageInterner;
+    private final TransactionTemplate transactionTemplate;
+    private final LinkedBlockingDeque<ErrorEntity> queue;
+    private final int batchSize;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    public ErrorEntityWriteBehindSink(
+            ErrorEntityRepository errorEntityRepository,
+            ErrorCountRepository errorCountRepository,
+            ErrorMessageInterner errorMessageInterner,
+            @Qualifier("transactionManager") PlatformTransactionManager transactionManager,
+            @Value("${spring.kafka.consumer.notification.dlt-database-queue-capacity:10000}") int queueCapacity,
+            @Value("${spring.kafka.consumer.notification.dlt-database-batch-size:50}") int batchSize) {
+        this.errorEntityRepository = errorEntityRepository;
+        this.errorCountRepository = errorCountRepository;
+        this.errorMessageInterner = errorMessageInterner;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new LinkedBlockingDeque<>(queueCapacity);
+        this.batchSize = batchSize;
+    }
+
+    public void enqueue(ErrorEntity errorEntity) {
+        // File pleine : le thread appelant vide lui-même la file (contre-pression)
+        while (!queue.offer(errorEntity)) {
+            flush();
+        }
+        if (queue.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("dlt-database-flush").start(this::scheduledFlush);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${spring.kafka.consumer.notification.dlt-database-flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Echec de l'écriture différée de la DLT base de données : {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Persiste toutes les entités mises en file avant l'appel. Lève une exception en cas d'échec,
+     * les entités restant alors en file pour une prochaine tentative.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            List<ErrorEntity> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                persist(batch);
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Purge des messages d'exception orphelins, sous le verrou d'écriture : aucun lot en cours ne peut
+     * référencer un message supprimé.
+     */
+    public int purgeUnreferencedMessages() {
+        flushLock.lock();
+        try {
+            return transactionTemplate.execute(status -> errorMessageInterner.purgeUnreferenced());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Arrêt : écriture des {} erreurs en attente", queue.size());
+        flush();
+    }
+
+    private void persist(List<ErrorEntity> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                batch.forEach(errorEntity -> errorEntity.setExceptionMessage(errorMessageInterner.intern(errorEntity.getException())));
+                errorEntityRepository.saveAll(batch);
+                count(batch);
+            });
+            log.debug("{} erreurs écrites en base de données", batch.size());
+        } catch (RuntimeException e) {
+            // Les messages créés dans la transaction annulée n'existent pas en base
+            errorMessageInterner.invalidate();
+            // Remise en tête de file, dans l'ordre d'origine, pour la prochaine tentative
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                ErrorEntity errorEntity = batch.get(i).setId(null);
+                if (!queue.offerFirst(errorEntity)) {
+                    log.error("File DLT base de données pleine, erreur perdue : {}", errorEntity.getRecord());
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void count(List<ErrorEntity> batch) {
+        Map<ErrorCount.Key, Long> counts = batch.stream().collect(Collectors.groupingBy(
+                errorEntity -> new ErrorCount.Key(errorEntity.getCreatedAt().truncatedTo(ChronoUnit.MINUTES), errorEntity.getErrorType()),
+                Collectors.counting()));
+        counts.forEach((key, count) -> {
+            if (errorCountRepository.increment(key, count) == 0) {
+                errorCountRepository.save(new ErrorCount().setId(key).setTotal(count));
+            }
+        });
+    }
+}
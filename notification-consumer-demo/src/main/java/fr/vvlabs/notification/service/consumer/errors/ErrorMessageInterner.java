@@ -0,0 +1,63 @@
+package fr.vvlabs.notification.service.consumer.errors;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.vvlabs.notification.model.ErrorMessage;
+import fr.vvlabs.notification.repository.ErrorMessageRepository;
+import fr.vvlabs.notification.util.FingerprintWindow;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Table des messages d'exception : une tempête d'erreurs répète quelques messages, stockés une seule fois et
+ * référencés par les ErrorEntity. Les messages récents sont gardés en cache pour éviter une requête par erreur.
+ * <p>
+ * Utilisé dans la transaction d'écriture de l'ErrorEntityWriteBehindSink, sous son verrou.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.dlt-database", havingValue = "true")
+public class ErrorMessageInterner {
+
+    private final ErrorMessageRepository errorMessageRepository;
+    private final Cache<String, ErrorMessage> cache;
+
+    public ErrorMessageInterner(
+            ErrorMessageRepository errorMessageRepository,
+            @Value("${spring.kafka.consumer.notification.dlt-database-message-cache-size:10000}") int cacheSize) {
+        this.errorMessageRepository = errorMessageRepository;
+        this.cache = Caffeine.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    public ErrorMessage intern(String message) {
+        if (message == null) {
+            return null;
+        }
+        String truncated = message.length() > ErrorMessage.MAX_LENGTH ? message.substring(0, ErrorMessage.MAX_LENGTH) : message;
+        return cache.get(truncated, this::findOrCreate);
+    }
+
+    /**
+     * Après l'annulation d'une transaction (messages créés non persistés) ou la purge des messages.
+     */
+    public void invalidate() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Supprime les messages qui ne sont plus référencés par aucune erreur. A appeler dans une transaction.
+     */
+    public int purgeUnreferenced() {
+        int deleted = errorMessageRepository.deleteUnreferenced();
+        cache.invalidateAll();
+        return deleted;
+    }
+
+    private ErrorMessage findOrCreate(String message) {
+        long hash = FingerprintWindow.fingerprint(message);
+        return errorMessageRepository.findByHash(hash).stream()
+                .filter(errorMessage -> message.equals(errorMessage.getMessage()))
+                .findFirst()
+                .orElseGet(() -> errorMessageRepository.save(new ErrorMessage().setHash(hash).setMessage(message)));
+    }
+}
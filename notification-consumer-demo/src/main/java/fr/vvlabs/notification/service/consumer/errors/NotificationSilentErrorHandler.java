@@ -1,7 +1,10 @@
 package fr.vvlabs.notification.service.consumer.errors;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.vvlabs.notification.metrics.NotificationMetrics;
 import fr.vvlabs.notification.model.ErrorEntity;
-import fr.vvlabs.notification.repository.ErrorEntityRepository;
+import fr.vvlabs.notification.service.consumer.retry.RetryTopicRouter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.ProducerRecord;
@@ -9,10 +12,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Component
 @RequiredArgsConstructor
@@ -20,19 +32,28 @@ import java.util.Optional;
 public class NotificationSilentErrorHandler implements AbstractNotificationErrorHandler<Message<?>> {
 
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final NotificationMetrics notificationMetrics;
+    private final ObjectMapper objectMapper;
 
     @Value("${spring.kafka.consumer.notification.dlt}")
     private String deadLetterTopic;
     @Value("${spring.kafka.consumer.notification.dlt-smir}")
     private String deadLetterTopicSmir;
     @Autowired(required = false)
-    protected Optional<ErrorEntityRepository> errorRecordRepository;
+    protected Optional<ErrorEntityWriteBehindSink> errorEntitySink;
     @Value("${spring.kafka.consumer.notification.dlt-database:false}")
     protected boolean dltDatabaseEnabled;
-    private int nbDlt = 0;
-    private int nbDltSmir = 0;
+    @Value("${spring.kafka.consumer.notification.dlt-send-timeout-ms:30000}")
+    protected long dltSendTimeout;
+    @Autowired(required = false)
+    protected Optional<RetryTopicRouter> retryTopicRouter;
+    // Envois DLT en cours pour le lot du thread listener courant (un lot par container)
+    private final ThreadLocal<List<CompletableFuture<SendResult<String, Object>>>> pendingDltSends = ThreadLocal.withInitial(ArrayList::new);
 
     public void sendToDlt(Message<?> message, Exception exception) {
+        if (sendToRetryTopic(message, exception)) {
+            return;
+        }
         if(dltDatabaseEnabled) {
             sendToDltDatabase(message, exception);
         }else{
@@ -41,6 +62,9 @@ public class NotificationSilentErrorHandler implements AbstractNotificationError
     }
 
     public void sendToDltSmir(Message<?> message, Exception exception) {
+        if (sendToRetryTopic(message, exception)) {
+            return;
+        }
         if(dltDatabaseEnabled) {
             sendToDltSmirDatabase(message, exception);
         }else{
@@ -48,26 +72,84 @@ public class NotificationSilentErrorHandler implements AbstractNotificationError
         }
     }
 
+    // Palier de retry suivant s'il en reste ; l'envoi est attendu avant le commit, comme un envoi DLT
+    private boolean sendToRetryTopic(Message<?> message, Exception exception) {
+        return retryTopicRouter.flatMap(router -> router.route(message, exception))
+                .map(pendingDltSends.get()::add)
+                .orElse(false);
+    }
+
+    /**
+     * Envoi (topic de sortie) dont l'acquittement doit, comme les envois DLT, être attendu avant le commit des offsets.
+     */
+    public void addPendingSend(CompletableFuture<SendResult<String, Object>> send) {
+        pendingDltSends.get().add(send);
+    }
+
+    /**
+     * Exécute {@code action} et retire de l'attente de {@link #flush()} les envois (DLT, retry, sortie) qu'elle
+     * lance : l'appelant suit lui-même leur acquittement, via le futur retourné (borné par dlt-send-timeout-ms).
+     */
+    public CompletableFuture<Void> captureSends(Runnable action) {
+        List<CompletableFuture<SendResult<String, Object>>> pending = pendingDltSends.get();
+        int before = pending.size();
+        action.run();
+        List<CompletableFuture<SendResult<String, Object>>> sends = pending.subList(before, pending.size());
+        CompletableFuture<Void> captured = CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new))
+                .orTimeout(dltSendTimeout, TimeUnit.MILLISECONDS);
+        sends.clear();
+        return captured;
+    }
+
+    /**
+     * A appeler avant le commit des offsets : garantit que les erreurs du lot sont persistées
+     * en base de données ou acquittées par le broker.
+     */
+    public void flush() {
+        errorEntitySink.ifPresent(ErrorEntityWriteBehindSink::flush);
+        awaitDltSends();
+    }
+
+    private void awaitDltSends() {
+        List<CompletableFuture<SendResult<String, Object>>> pending = pendingDltSends.get();
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(dltSendTimeout, TimeUnit.MILLISECONDS);
+            log.debug("{} envois DLT acquittés", pending.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Attente des envois DLT interrompue", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Envoi DLT non acquitté, le lot ne sera pas commité", e);
+        } finally {
+            pending.clear();
+        }
+    }
+
     @Override
     public void sendToDltDatabase(Message<?> message, Exception exception) {
         log.error("Generic Error in processing message: {}, sending to database", message.getPayload());
-        ErrorEntityRepository repository = errorRecordRepository.orElseThrow(()-> new IllegalStateException("ErrorRecordRepository is null"));
-        repository.save(buildErrorEntity(message, exception, "Generic"));
+        ErrorEntityWriteBehindSink sink = errorEntitySink.orElseThrow(()-> new IllegalStateException("ErrorEntityWriteBehindSink is null"));
+        sink.enqueue(buildErrorEntity(message, exception, "Generic"));
+        notificationMetrics.recordDlt(NotificationMetrics.GENERIC, NotificationMetrics.DATABASE);
     }
 
     @Override
     public void sendToDltSmirDatabase(Message<?> message, Exception exception) {
         log.error("SMIR Error in processing message: {}, sending to database", message.getPayload());
-        ErrorEntityRepository repository = errorRecordRepository.orElseThrow(()-> new IllegalStateException("ErrorRecordRepository is null"));
-        repository.save(buildErrorEntity(message, exception, "SMIR"));
+        ErrorEntityWriteBehindSink sink = errorEntitySink.orElseThrow(()-> new IllegalStateException("ErrorEntityWriteBehindSink is null"));
+        sink.enqueue(buildErrorEntity(message, exception, "SMIR"));
+        notificationMetrics.recordDlt(NotificationMetrics.SMIR, NotificationMetrics.DATABASE);
     }
 
     @Override
     public void sendToDltTopic(Message<?> message, Exception exception) {
         log.error("Generic Error in processing message: {}, sending to {}", message.getPayload(), deadLetterTopic);
         ProducerRecord<String, Object> errorRecord = buildErrorRecord(message, deadLetterTopic);
-        kafkaTemplate.send(errorRecord);
-        nbDlt++;
+        pendingDltSends.get().add(kafkaTemplate.send(errorRecord));
+        long nbDlt = notificationMetrics.recordDlt(NotificationMetrics.GENERIC, NotificationMetrics.TOPIC);
         log.error("DLT count: {}", nbDlt);
     }
 
@@ -75,20 +157,34 @@ public class NotificationSilentErrorHandler implements AbstractNotificationError
     public void sendToDltSmirTopic(Message<?> message, Exception exception) {
         log.error("SMIR Error in processing message: {}, sending to {}", message.getPayload(), deadLetterTopicSmir);
         ProducerRecord<String, Object> errorRecord = buildErrorRecord(message, deadLetterTopicSmir);
-        kafkaTemplate.send(errorRecord);
-        nbDltSmir++;
+        pendingDltSends.get().add(kafkaTemplate.send(errorRecord));
+        long nbDltSmir = notificationMetrics.recordDlt(NotificationMetrics.SMIR, NotificationMetrics.TOPIC);
         log.error("DLT SMIR count: {}", nbDltSmir);
     }
 
     @Override
     public ErrorEntity buildErrorEntity(Message<?> message, Exception exception, String errorType) {
         return new ErrorEntity()
-                .setRecord(message.getPayload().toString())
+                .setRecord(recordValue(message.getPayload()))
                 .setException(exception.getMessage())
-                .setErrorType(errorType);
+                .setErrorType(errorType)
+                .setCreatedAt(LocalDateTime.now());
+    }
+
+    // Le record stocké reste le JSON reçu, et non le toString() de l'évènement désérialisé
+    private String recordValue(Object payload) {
+        if (payload instanceof String value) {
+            return value;
+        }
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            return String.valueOf(payload);
+        }
     }
 
-    private ProducerRecord<String, Object> buildErrorRecord(Message<?> message, String destinationTopic) {
+    // Visibilité package : mesuré isolément par ErrorHandlerBenchmark (profil benchmark)
+    ProducerRecord<String, Object> buildErrorRecord(Message<?> message, String destinationTopic) {
         String key = message.getHeaders().get(KafkaHeaders.RECEIVED_KEY, String.class);
         Integer partition = message.getHeaders().get(KafkaHeaders.RECEIVED_PARTITION, Integer.class);
         Object payload = message.getPayload();
@@ -96,8 +192,10 @@ public class NotificationSilentErrorHandler implements AbstractNotificationError
                 destinationTopic, partition, key, payload);
         // Recopier les en-têtes
         message.getHeaders().forEach((headerKey, headerValue) -> {
-            if (headerValue instanceof String || headerValue instanceof byte[]) {
-                producerRecord.headers().add(headerKey, headerValue.toString().getBytes());
+            if (headerValue instanceof String stringValue) {
+                producerRecord.headers().add(headerKey, stringValue.getBytes(StandardCharsets.UTF_8));
+            } else if (headerValue instanceof byte[] bytesValue) {
+                producerRecord.headers().add(headerKey, bytesValue);
             }
         });
         return producerRecord;
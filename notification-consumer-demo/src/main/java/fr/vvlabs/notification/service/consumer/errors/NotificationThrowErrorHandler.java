@@ -1,18 +1,36 @@
 package fr.vvlabs.notification.service.consumer.errors;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.vvlabs.notification.exception.AggregatedTransactionRollbackException;
 import fr.vvlabs.notification.exception.SmirClientTooManyRequestException;
+import fr.vvlabs.notification.metrics.NotificationMetrics;
 import fr.vvlabs.notification.model.ErrorEntity;
-import fr.vvlabs.notification.repository.ErrorEntityRepository;
+import fr.vvlabs.notification.service.consumer.retry.RetryTopicRouter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaOperations;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultAfterRollbackProcessor;
 import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.serializer.DeserializationException;
 import org.springframework.messaging.Message;
 import org.springframework.util.backoff.FixedBackOff;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 public class NotificationThrowErrorHandler implements AbstractNotificationErrorHandler<ConsumerRecord<?, ?>> {
@@ -24,12 +42,13 @@ public class NotificationThrowErrorHandler implements AbstractNotificationErrorH
     private final int retries;
     private final long retriesInterval;
     private final boolean retriesSmir;
+    private final NotificationMetrics notificationMetrics;
+    private final ObjectMapper objectMapper;
 
-    protected Optional<ErrorEntityRepository> errorRecordRepository;
+    protected Optional<ErrorEntityWriteBehindSink> errorEntitySink;
     protected boolean dltDatabaseEnabled;
-
-    private int nbDlt = 0;
-    private int nbDltSmir = 0;
+    protected Optional<RetryTopicRouter> retryTopicRouter;
+    protected long dltSendTimeout;
 
     public NotificationThrowErrorHandler(
             DeadLetterPublishingRecoverer genericRecoverer,
@@ -39,8 +58,12 @@ public class NotificationThrowErrorHandler implements AbstractNotificationErrorH
             int retries,
             long retriesInterval,
             boolean retriesSmir,
-            Optional<ErrorEntityRepository> errorRecordRepository,
-            boolean dltDatabaseEnabled) {
+            NotificationMetrics notificationMetrics,
+            ObjectMapper objectMapper,
+            Optional<ErrorEntityWriteBehindSink> errorEntitySink,
+            boolean dltDatabaseEnabled,
+            Optional<RetryTopicRouter> retryTopicRouter,
+            long dltSendTimeout) {
         this.genericRecoverer = genericRecoverer;
         this.smirRecoverer = smirRecoverer;
         this.deadLetterTopic = deadLetterTopic;
@@ -48,58 +71,141 @@ public class NotificationThrowErrorHandler implements AbstractNotificationErrorH
         this.retries = retries;
         this.retriesInterval = retriesInterval;
         this.retriesSmir = retriesSmir;
-        this.errorRecordRepository = errorRecordRepository;
+        this.notificationMetrics = notificationMetrics;
+        this.objectMapper = objectMapper;
+        this.errorEntitySink = errorEntitySink;
         this.dltDatabaseEnabled = dltDatabaseEnabled;
+        this.retryTopicRouter = retryTopicRouter;
+        this.dltSendTimeout = dltSendTimeout;
+        if (retryTopicRouter.isPresent() && retries > 0) {
+            log.warn("retry-topics activé : retries={} ignoré, aucune relance sur place (les paliers de retry la remplacent)", retries);
+        }
     }
 
     public DefaultErrorHandler createErrorHandler() {
-        FixedBackOff fixedBackOff = new FixedBackOff(retriesInterval, retries);
-
-        DefaultErrorHandler errorHandler = new DefaultErrorHandler(
-                (record, ex) -> {
-                    if (isCauseSmirClientTooManyRequestException(ex)) {
-                        if(dltDatabaseEnabled) {
-                            sendToDltSmirDatabase(record, ex);
-                        } else {
-                            sendToDltSmirTopic(record, ex);
-                        }
-                    } else {
-                        if(dltDatabaseEnabled) {
-                            sendToDltDatabase(record, ex);
-                        } else {
-                            sendToDltTopic(record, ex);
-                        }
-                    }
-                },
-                fixedBackOff
-        );
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(this::recover, backOff()) {
+
+            @Override
+            public void handleRemaining(Exception thrownException, List<ConsumerRecord<?, ?>> records,
+                                        Consumer<?, ?> consumer, MessageListenerContainer container) {
+                AggregatedTransactionRollbackException rollback = findCause(thrownException, AggregatedTransactionRollbackException.class);
+                if (rollback == null) {
+                    super.handleRemaining(thrownException, records, consumer, container);
+                    return;
+                }
+                // Transaction agrégée annulée : aucun record n'est en erreur, tous ceux qu'elle couvrait sont relus
+                Map<TopicPartition, Long> offsets = new HashMap<>(rollback.getFirstOffsets());
+                records.forEach(record -> offsets.merge(
+                        new TopicPartition(record.topic(), record.partition()), record.offset(), Math::min));
+                offsets.forEach(consumer::seek);
+            }
+        };
 
         if (!retriesSmir) {
             errorHandler.addNotRetryableExceptions(SmirClientTooManyRequestException.class);
         }
+        if (dltDatabaseEnabled) {
+            // Ecriture différée : l'offset du record récupéré n'est pas commité tout de suite, mais avec celui du
+            // record suivant, après le vidage de la DLT base de données qui précède chaque commit des listeners
+            errorHandler.setAckAfterHandle(false);
+        }
 
         return errorHandler;
     }
 
+    /**
+     * Stratégie eos : après le rollback de la transaction du container, le record est relu ; une fois les relances
+     * épuisées, il est récupéré (retry, DLT) dans une nouvelle transaction qui commite aussi son offset.
+     */
+    public DefaultAfterRollbackProcessor<Object, Object> createAfterRollbackProcessor(KafkaOperations<?, ?> kafkaOperations) {
+        // L'offset du record récupéré est commité aussitôt, dans la transaction : l'erreur doit être persistée avant
+        DefaultAfterRollbackProcessor<Object, Object> afterRollbackProcessor =
+                new DefaultAfterRollbackProcessor<>((record, ex) -> {
+                    recover(record, ex);
+                    flush();
+                }, backOff(), kafkaOperations, true);
+        if (!retriesSmir) {
+            afterRollbackProcessor.addNotRetryableExceptions(SmirClientTooManyRequestException.class);
+        }
+        return afterRollbackProcessor;
+    }
+
+    // Avec les topics de retry, aucune relance sur place : le record quitte la partition immédiatement
+    private FixedBackOff backOff() {
+        return retryTopicRouter.isPresent()
+                ? new FixedBackOff(0, 0)
+                : new FixedBackOff(retriesInterval, retries);
+    }
+
+    /**
+     * Récupération d'un record en échec : palier de retry suivant s'il en reste, sinon DLT (topic ou base de données).
+     */
+    public void recover(ConsumerRecord<?, ?> record, Exception ex) {
+        if (retryTopicRouter.isPresent() && sendToRetryTopic(retryTopicRouter.get(), record, ex)) {
+            return;
+        }
+        if (findCause(ex, SmirClientTooManyRequestException.class) != null) {
+            if(dltDatabaseEnabled) {
+                sendToDltSmirDatabase(record, ex);
+            } else {
+                sendToDltSmirTopic(record, ex);
+            }
+        } else {
+            if(dltDatabaseEnabled) {
+                sendToDltDatabase(record, ex);
+            } else {
+                sendToDltTopic(record, ex);
+            }
+        }
+    }
+
+    /**
+     * Persiste les erreurs en attente d'écriture (DLT base de données) : à appeler avant de commiter soi-même
+     * l'offset de records récupérés.
+     */
+    public void flush() {
+        errorEntitySink.ifPresent(ErrorEntityWriteBehindSink::flush);
+    }
+
+    // L'offset est commité après la récupération : l'envoi doit être acquitté avant de rendre la main
+    private boolean sendToRetryTopic(RetryTopicRouter router, ConsumerRecord<?, ?> record, Exception ex) {
+        return router.route(record, ex)
+                .map(send -> {
+                    try {
+                        send.get(dltSendTimeout, TimeUnit.MILLISECONDS);
+                        return true;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Envoi vers le topic de retry interrompu", e);
+                    } catch (ExecutionException | TimeoutException e) {
+                        throw new IllegalStateException("Envoi vers le topic de retry non acquitté", e);
+                    }
+                })
+                .orElse(false);
+    }
+
+    // Ecriture par lots : vidée avant le commit de l'offset (voir createErrorHandler), sinon à l'intervalle du sink
     @Override
     public void sendToDltDatabase(ConsumerRecord<?, ?> record, Exception exception) {
         log.error("Generic Error in processing message: {}, sending to database", record.value());
-        ErrorEntityRepository repository = errorRecordRepository.orElseThrow(()-> new IllegalStateException("ErrorRecordRepository is null"));
-        repository.save(buildErrorEntity(record, exception, "Generic"));
+        ErrorEntityWriteBehindSink sink = errorEntitySink.orElseThrow(()-> new IllegalStateException("ErrorEntityWriteBehindSink is null"));
+        sink.enqueue(buildErrorEntity(record, exception, "Generic"));
+        notificationMetrics.recordDlt(NotificationMetrics.GENERIC, NotificationMetrics.DATABASE);
     }
 
     @Override
     public void sendToDltSmirDatabase(ConsumerRecord<?, ?> record, Exception exception) {
         log.error("SMIR Error in processing message: {}, sending to database", record.value());
-        ErrorEntityRepository repository = errorRecordRepository.orElseThrow(()-> new IllegalStateException("ErrorRecordRepository is null"));
-        repository.save(buildErrorEntity(record, exception, "SMIR"));
+        ErrorEntityWriteBehindSink sink = errorEntitySink.orElseThrow(()-> new IllegalStateException("ErrorEntityWriteBehindSink is null"));
+        sink.enqueue(buildErrorEntity(record, exception, "SMIR"));
+        notificationMetrics.recordDlt(NotificationMetrics.SMIR, NotificationMetrics.DATABASE);
     }
 
     @Override
     public void sendToDltTopic(ConsumerRecord<?, ?> record, Exception ex) {
         log.error("Generic Error in processing message: {}, sending to {}", record, deadLetterTopic);
         genericRecoverer.accept(record, ex);
-        nbDlt++;
+        long nbDlt = notificationMetrics.recordDlt(NotificationMetrics.GENERIC, NotificationMetrics.TOPIC);
         log.error("DLT count: {}", nbDlt);
     }
 
@@ -107,27 +213,46 @@ public class NotificationThrowErrorHandler implements AbstractNotificationErrorH
     public void sendToDltSmirTopic(ConsumerRecord<?, ?> record, Exception ex) {
         log.error("SMIR Error in processing message: {}, sending to {}", record, deadLetterTopicSmir);
         smirRecoverer.accept(record, ex);
-        nbDltSmir++;
+        long nbDltSmir = notificationMetrics.recordDlt(NotificationMetrics.SMIR, NotificationMetrics.TOPIC);
         log.error("DLT SMIR count: {}", nbDltSmir);
     }
 
     @Override
     public ErrorEntity buildErrorEntity(ConsumerRecord<?, ?> record, Exception exception, String errorType) {
         return new ErrorEntity()
-                .setRecord(record.value().toString())
+                .setRecord(recordValue(record, exception))
                 .setException(exception.getMessage())
-                .setErrorType(errorType);
+                .setErrorType(errorType)
+                .setCreatedAt(LocalDateTime.now());
     }
 
-    private boolean isCauseSmirClientTooManyRequestException(Throwable ex) {
+    // Un message illisible n'a pas de valeur : on conserve alors les octets reçus, portés par la DeserializationException
+    private String recordValue(ConsumerRecord<?, ?> record, Exception exception) {
+        Object value = record.value();
+        if (value == null) {
+            DeserializationException deserializationException = findCause(exception, DeserializationException.class);
+            return deserializationException != null && deserializationException.getData() != null
+                    ? new String(deserializationException.getData(), StandardCharsets.UTF_8)
+                    : null;
+        }
+        if (value instanceof String stringValue) {
+            return stringValue;
+        }
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            return value.toString();
+        }
+    }
+
+    private <T extends Throwable> T findCause(Throwable ex, Class<T> type) {
         Throwable cause = ex;
         do {
-            if (cause instanceof SmirClientTooManyRequestException) {
-                return true;
+            if (type.isInstance(cause)) {
+                return type.cast(cause);
             }
             cause = cause.getCause();
         } while (cause != null);
-        return false;
+        return null;
     }
 }
-
@@ -0,0 +1,306 @@
+package fr.vvlabs.notification.service.consumer.offset;
+
+import fr.vvlabs.notification.config.CommitStrategy;
+import fr.vvlabs.notification.config.ConsumerMode;
+import fr.vvlabs.notification.config.ExceptionStrategy;
+import fr.vvlabs.notification.metrics.NotificationMetrics;
+import fr.vvlabs.notification.service.consumer.errors.NotificationSilentErrorHandler;
+import fr.vvlabs.notification.util.Futures;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Traitement des records dans le désordre (mode record, stratégie manual) : le listener lance le traitement sans
+ * l'attendre, et seul le watermark de chaque partition (offsets terminés contigus) est commité, au plus une fois
+ * par {@code out-of-order.commit-interval-ms}. Un crash ne fait relire que les records au-delà du watermark.
+ * <p>
+ * Les fins de traitement sont remises au thread du consommateur (une file par container) : erreurs (DLT),
+ * avancement du watermark et commits y sont exécutés, le Consumer Kafka n'étant pas thread-safe.
+ */
+@Component
+@Slf4j
+public class OffsetWatermarkCommitter {
+
+    private final NotificationSilentErrorHandler notificationErrorHandler;
+    private final NotificationMetrics notificationMetrics;
+    private final boolean enabled;
+    private final int maxInFlight;
+    private final long commitInterval;
+    private final boolean syncCommits;
+
+    private final ThreadLocal<State> states = ThreadLocal.withInitial(State::new);
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public OffsetWatermarkCommitter(
+            NotificationSilentErrorHandler notificationErrorHandler,
+            NotificationMetrics notificationMetrics,
+            MeterRegistry meterRegistry,
+            @Value("${spring.kafka.consumer.notification.mode:batch}") String consumerMode,
+            @Value("${spring.kafka.consumer.notification.commit-strategy:auto}") String commitStrategy,
+            @Value("${spring.kafka.consumer.notification.out-of-order.enabled:false}") boolean enabled,
+            @Value("${spring.kafka.consumer.notification.out-of-order.max-in-flight:10000}") int maxInFlight,
+            @Value("${spring.kafka.consumer.notification.out-of-order.commit-interval-ms:1000}") long commitInterval,
+            @Value("${spring.kafka.consumer.notification.sync-commits:false}") boolean syncCommits,
+            @Value("${spring.kafka.consumer.notification.exception-strategy:throw}") String exceptionStrategy,
+            @Value("${spring.kafka.consumer.notification.exception-strategy-smir:silent}") String exceptionStrategySmir) {
+        this.notificationErrorHandler = notificationErrorHandler;
+        this.notificationMetrics = notificationMetrics;
+        // Réservé au mode record avec la stratégie manual : les lots et les transactions commitent déjà après traitement
+        this.enabled = enabled && ConsumerMode.RECORD.equals(consumerMode) && CommitStrategy.MANUAL.equals(commitStrategy);
+        this.maxInFlight = maxInFlight;
+        this.commitInterval = commitInterval;
+        this.syncCommits = syncCommits;
+        if (this.enabled && (ExceptionStrategy.THROW.equals(exceptionStrategy) || ExceptionStrategy.THROW.equals(exceptionStrategySmir))) {
+            log.warn("Traitement hors ordre : exception-strategy throw ignorée, les erreurs sont envoyées en DLT");
+        }
+        Gauge.builder("notification.offsets.in-flight", inFlight, AtomicInteger::get)
+                .description("Records en cours de traitement hors ordre, non encore commitables")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Lance le traitement d'un record. Si la fenêtre de la partition est pleine ({@code max-in-flight}), attend
+     * la fin des traitements les plus anciens. {@code onComplete} est appelé sur le thread du consommateur, avec
+     * l'erreur éventuelle, et retourne les envois qu'il a lancés (DLT, retry, sortie) : l'offset ne devient
+     * commitable qu'une fois ces envois acquittés. S'il lève une exception ou si un envoi échoue, l'offset n'est
+     * pas marqué terminé et le consommateur est repositionné sur ce record, qui est relu avec les suivants.
+     */
+    public void submit(Message<?> message, Consumer<?, ?> consumer, Supplier<CompletableFuture<Void>> work,
+                       BiFunction<Message<?>, Throwable, CompletableFuture<?>> onComplete) {
+        State state = states.get();
+        MessageHeaders headers = message.getHeaders();
+        TopicPartition partition = new TopicPartition(
+                headers.get(KafkaHeaders.RECEIVED_TOPIC, String.class),
+                headers.get(KafkaHeaders.RECEIVED_PARTITION, Integer.class));
+        long offset = headers.get(KafkaHeaders.OFFSET, Long.class);
+
+        PartitionOffsetTracker tracker = state.trackers.computeIfAbsent(partition, key -> new PartitionOffsetTracker(maxInFlight));
+        while (!tracker.canTrack(offset)) {
+            awaitCompletion(state, consumer);
+        }
+        tracker.track(offset);
+        inFlight.incrementAndGet();
+
+        CompletableFuture<Void> execution;
+        try {
+            execution = work.get();
+        } catch (RuntimeException e) {
+            execution = CompletableFuture.failedFuture(e);
+        }
+        execution.whenComplete((ignored, error) -> state.completions.add(
+                new Completion(partition, offset, message, onComplete, error == null ? null : Futures.unwrap(error))));
+    }
+
+    public void commitIfDue(Consumer<?, ?> consumer) {
+        State state = states.get();
+        drain(state, consumer);
+        if (System.currentTimeMillis() - state.lastCommit >= commitInterval) {
+            commit(state, consumer, syncCommits);
+        }
+    }
+
+    /**
+     * Commit immédiat des watermarks du thread courant (inactivité, perte de partitions).
+     */
+    public void commitNow(Consumer<?, ?> consumer) {
+        State state = states.get();
+        drain(state, consumer);
+        commit(state, consumer, syncCommits);
+    }
+
+    /**
+     * Avant la révocation de partitions : attend la fin des traitements en cours sur ces partitions, au plus
+     * {@code timeout} ms, puis commite les watermarks de manière synchrone. Les records encore en cours au-delà
+     * seront relus par le nouveau propriétaire.
+     */
+    public void commitBeforeRevocation(Consumer<?, ?> consumer, Collection<TopicPartition> partitions, long timeout) {
+        State state = states.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        drain(state, consumer);
+        try {
+            long remaining;
+            while (hasPending(state, partitions) && (remaining = deadline - System.nanoTime()) > 0) {
+                Completion completion = state.completions.poll(remaining, TimeUnit.NANOSECONDS);
+                if (completion != null) {
+                    complete(state, completion);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (hasPending(state, partitions)) {
+            log.warn("Traitements toujours en cours à la révocation de {}, relus par le nouveau propriétaire", partitions);
+        }
+        // Echecs sur les partitions révoquées : le nouveau propriétaire relit depuis le watermark commité
+        state.failed.keySet().removeAll(partitions);
+        drain(state, consumer);
+        commit(state, consumer, true);
+        state.trackers.keySet().removeAll(partitions);
+        state.committed.keySet().removeAll(partitions);
+    }
+
+    // Publié sur le thread du consommateur : commit des records terminés depuis le dernier message reçu
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        if (enabled && !states.get().trackers.isEmpty()) {
+            commitNow(event.getConsumer());
+        }
+    }
+
+    private void awaitCompletion(State state, Consumer<?, ?> consumer) {
+        try {
+            Completion completion = state.completions.poll(commitInterval, TimeUnit.MILLISECONDS);
+            if (completion != null) {
+                complete(state, completion);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Attente des traitements en cours interrompue", e);
+        }
+        commitIfDue(consumer);
+    }
+
+    private void drain(State state, Consumer<?, ?> consumer) {
+        Completion completion;
+        while ((completion = state.completions.poll()) != null) {
+            complete(state, completion);
+        }
+        if (state.failed.isEmpty()) {
+            return;
+        }
+        Set<TopicPartition> assignment = consumer.assignment();
+        state.failed.forEach((partition, offset) -> {
+            if (assignment.contains(partition)) {
+                log.warn("Relecture de {} à partir de l'offset {}", partition, offset);
+                consumer.seek(partition, offset);
+            }
+        });
+        state.failed.clear();
+    }
+
+    // Ne lève jamais d'exception : elle remonterait dans l'appel du listener d'un autre record
+    private void complete(State state, Completion completion) {
+        if (completion.onComplete() == null) {
+            // Acquittement des envois lancés par onComplete
+            settle(state, completion.partition(), completion.offset(), completion.error());
+            return;
+        }
+        CompletableFuture<?> sends;
+        try {
+            sends = completion.onComplete().apply(completion.message(), completion.error());
+        } catch (RuntimeException e) {
+            settle(state, completion.partition(), completion.offset(), e);
+            return;
+        }
+        if (sends == null || (sends.isDone() && !sends.isCompletedExceptionally())) {
+            settle(state, completion.partition(), completion.offset(), null);
+            return;
+        }
+        sends.whenComplete((ignored, error) -> state.completions.add(new Completion(completion.partition(),
+                completion.offset(), null, null, error == null ? null : Futures.unwrap(error))));
+    }
+
+    private void settle(State state, TopicPartition partition, long offset, Throwable error) {
+        inFlight.decrementAndGet();
+        if (error != null) {
+            log.error("Fin de traitement impossible pour {} offset {}, record relu", partition, offset, error);
+            state.failed.merge(partition, offset, Math::min);
+            return;
+        }
+        PartitionOffsetTracker tracker = state.trackers.get(partition);
+        if (tracker != null) {
+            tracker.complete(offset);
+        }
+    }
+
+    private boolean hasPending(State state, Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            PartitionOffsetTracker tracker = state.trackers.get(partition);
+            // Un échec bloque le watermark : inutile d'attendre les autres traitements de la partition
+            if (tracker != null && tracker.getPending() > 0 && !state.failed.containsKey(partition)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void commit(State state, Consumer<?, ?> consumer, boolean sync) {
+        state.lastCommit = System.currentTimeMillis();
+        // Partitions perdues : leur watermark écraserait la progression du nouveau propriétaire
+        Set<TopicPartition> assignment = consumer.assignment();
+        state.trackers.keySet().retainAll(assignment);
+        state.committed.keySet().retainAll(assignment);
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        state.trackers.forEach((partition, tracker) -> {
+            long watermark = tracker.getWatermark();
+            if (watermark > state.committed.getOrDefault(partition, -1L)) {
+                offsets.put(partition, new OffsetAndMetadata(watermark));
+            }
+        });
+        if (offsets.isEmpty()) {
+            return;
+        }
+        // Les erreurs des records terminés doivent être persistées avant le commit de leurs offsets. En cas d'échec,
+        // elles restent en file et le commit est retenté plus tard, sans remonter dans le listener d'un autre record.
+        try {
+            notificationErrorHandler.flush();
+        } catch (RuntimeException e) {
+            log.warn("Erreurs en attente non persistées, commit des watermarks reporté : {}", e.getMessage());
+            return;
+        }
+        if (sync) {
+            consumer.commitSync(offsets);
+        } else {
+            consumer.commitAsync(offsets, (committed, exception) -> {
+                if (exception != null) {
+                    log.warn("Echec du commit des watermarks {} : {}", committed, exception.getMessage());
+                }
+            });
+        }
+        offsets.forEach((partition, offset) -> state.committed.put(partition, offset.offset()));
+        notificationMetrics.recordCommit();
+        log.debug("Watermarks commités : {}", offsets);
+    }
+
+    private static class State {
+        private final Map<TopicPartition, PartitionOffsetTracker> trackers = new HashMap<>();
+        private final Map<TopicPartition, Long> committed = new HashMap<>();
+        // Plus petit offset dont la fin de traitement a échoué, par partition : à relire
+        private final Map<TopicPartition, Long> failed = new HashMap<>();
+        private final BlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+        private long lastCommit = System.currentTimeMillis();
+    }
+
+    // Fin de traitement (onComplete renseigné), ou acquittement de ses envois (onComplete null)
+    private record Completion(TopicPartition partition, long offset, Message<?> message,
+                              BiFunction<Message<?>, Throwable, CompletableFuture<?>> onComplete, Throwable error) {
+    }
+}
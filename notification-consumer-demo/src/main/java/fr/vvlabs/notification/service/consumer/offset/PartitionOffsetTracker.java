@@ -0,0 +1,95 @@
+package fr.vvlabs.notification.service.consumer.offset;
+
+import java.util.Arrays;
+
+/**
+ * Offsets en cours d'une partition, dans un anneau de bits : un bit par offset entre le watermark (prochain offset
+ * à commiter) et le dernier offset reçu, positionné quand le traitement est terminé. Le watermark n'avance que sur
+ * des offsets terminés contigus. Les trous (offsets jamais reçus : marqueurs de transaction, compaction) sont
+ * considérés terminés.
+ * <p>
+ * Non thread-safe : utilisé uniquement par le thread du consommateur propriétaire de la partition.
+ */
+public class PartitionOffsetTracker {
+
+    private final int capacity;
+    private final long[] completed;
+    private long watermark = -1;
+    private long highest = -1;
+
+    public PartitionOffsetTracker(int capacity) {
+        // Capacité arrondie au multiple de 64 supérieur
+        this.completed = new long[Math.max(1, (capacity + 63) >>> 6)];
+        this.capacity = completed.length << 6;
+    }
+
+    /**
+     * Faux si l'offset sortirait de l'anneau : il faut attendre la fin du plus ancien traitement en cours.
+     */
+    public boolean canTrack(long offset) {
+        return watermark < 0 || offset <= highest || offset - watermark < capacity || isIdle();
+    }
+
+    public void track(long offset) {
+        if (watermark < 0 || (isIdle() && (offset < watermark || offset - watermark >= capacity))) {
+            // Premier record, relecture après un seek, ou reprise loin du dernier offset, sans traitement en cours
+            reset(offset);
+        } else if (offset <= highest) {
+            // Relecture d'un offset déjà suivi alors que des traitements sont en cours : le watermark ne doit pas
+            // dépasser les offsets non terminés. Un offset en cours sera terminé par sa nouvelle exécution.
+            return;
+        } else {
+            for (long gap = highest + 1; gap < offset; gap++) {
+                set(gap);
+            }
+        }
+        highest = offset;
+        advance();
+    }
+
+    public void complete(long offset) {
+        if (offset < watermark || offset > highest) {
+            return;
+        }
+        set(offset);
+        advance();
+    }
+
+    /**
+     * Prochain offset à commiter : tous les offsets inférieurs sont traités. -1 si aucun record n'a été reçu.
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public long getPending() {
+        return watermark < 0 ? 0 : highest - watermark + 1;
+    }
+
+    private boolean isIdle() {
+        return watermark > highest;
+    }
+
+    private void reset(long offset) {
+        Arrays.fill(completed, 0);
+        watermark = offset;
+        highest = offset - 1;
+    }
+
+    private void advance() {
+        while (watermark <= highest) {
+            int index = (int) (watermark % capacity);
+            long mask = 1L << index;
+            if ((completed[index >>> 6] & mask) == 0) {
+                return;
+            }
+            completed[index >>> 6] &= ~mask;
+            watermark++;
+        }
+    }
+
+    private void set(long offset) {
+        int index = (int) (offset % capacity);
+        completed[index >>> 6] |= 1L << index;
+    }
+}
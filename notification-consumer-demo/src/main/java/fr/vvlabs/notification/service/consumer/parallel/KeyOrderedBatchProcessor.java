@@ -0,0 +1,61 @@
+package fr.vvlabs.notification.service.consumer.parallel;
+
+import fr.vvlabs.notification.util.Futures;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Traite un lot de manière asynchrone en conservant l'ordre des éléments d'une même clé :
+ * chaque élément ne démarre qu'à la fin du précédent de même clé, les clés différentes se chevauchent.
+ * Les erreurs ne sont pas propagées : elles sont retournées à l'appelant, alignées sur les éléments du lot.
+ */
+@Component
+@Slf4j
+public class KeyOrderedBatchProcessor {
+
+    public <T> List<Exception> process(List<T> items, Function<T, ?> keyExtractor, Function<T, CompletableFuture<Void>> task) {
+        Exception[] errors = new Exception[items.size()];
+
+        Map<Object, CompletableFuture<Void>> chains = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            int index = i;
+            T item = items.get(i);
+            Object key = keyExtractor.apply(item);
+            CompletableFuture<Void> previous = chains.getOrDefault(key, CompletableFuture.completedFuture(null));
+            CompletableFuture<Void> next = previous
+                    .thenCompose(ignored -> invoke(task, item))
+                    .handle((result, error) -> {
+                        if (error != null) {
+                            errors[index] = toException(error);
+                        }
+                        return null;
+                    });
+            chains.put(key, next);
+        }
+        log.debug("Traitement parallèle de {} éléments répartis sur {} clés", items.size(), chains.size());
+
+        // Le lot n'est terminé que lorsque toutes les clés ont été traitées
+        CompletableFuture.allOf(chains.values().toArray(CompletableFuture[]::new)).join();
+        return Arrays.asList(errors);
+    }
+
+    private static <T> CompletableFuture<Void> invoke(Function<T, CompletableFuture<Void>> task, T item) {
+        try {
+            return task.apply(item);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static Exception toException(Throwable error) {
+        Throwable cause = Futures.unwrap(error);
+        return cause instanceof Exception exception ? exception : new RuntimeException(cause);
+    }
+}
@@ -0,0 +1,142 @@
+package fr.vvlabs.notification.service.consumer.rebalance;
+
+import fr.vvlabs.notification.exception.AggregatedTransactionRollbackException;
+import fr.vvlabs.notification.service.consumer.errors.NotificationSilentErrorHandler;
+import fr.vvlabs.notification.service.consumer.offset.OffsetWatermarkCommitter;
+import fr.vvlabs.notification.service.consumer.transaction.RecordTransactionAggregator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rééquilibrages du groupe, sur le thread du consommateur. Avant la révocation de partitions, le travail en cours
+ * est terminé puis commité : transaction agrégée, watermarks des traitements hors ordre, erreurs en attente
+ * d'écriture (base, DLT). Le container commite ensuite les acquittements en attente (AckMode MANUAL).
+ * <p>
+ * Partitions perdues (session expirée) : rien n'est commité, le nouveau propriétaire relit les records.
+ */
+@Component
+@Slf4j
+public class NotificationRebalanceListener implements ConsumerAwareRebalanceListener {
+
+    private static final String REVOKED = "revoked";
+    private static final String ASSIGNED = "assigned";
+    private static final String LOST = "lost";
+
+    private final RecordTransactionAggregator transactionAggregator;
+    private final OffsetWatermarkCommitter offsetWatermarkCommitter;
+    private final NotificationSilentErrorHandler notificationErrorHandler;
+    private final MeterRegistry meterRegistry;
+    private final long revokeTimeout;
+
+    private final AtomicInteger assignedPartitions = new AtomicInteger();
+    // Début de la dernière révocation du thread courant, 0 si aucune
+    private final ThreadLocal<long[]> revokedAt = ThreadLocal.withInitial(() -> new long[1]);
+    private final Timer revokeFlush;
+    private final Timer pause;
+
+    public NotificationRebalanceListener(
+            RecordTransactionAggregator transactionAggregator,
+            OffsetWatermarkCommitter offsetWatermarkCommitter,
+            NotificationSilentErrorHandler notificationErrorHandler,
+            MeterRegistry meterRegistry,
+            @Value("${spring.kafka.consumer.notification.rebalance.revoke-timeout-ms:10000}") long revokeTimeout) {
+        this.transactionAggregator = transactionAggregator;
+        this.offsetWatermarkCommitter = offsetWatermarkCommitter;
+        this.notificationErrorHandler = notificationErrorHandler;
+        this.meterRegistry = meterRegistry;
+        this.revokeTimeout = revokeTimeout;
+        Gauge.builder("notification.partitions.assigned", assignedPartitions, AtomicInteger::get)
+                .description("Partitions assignées aux consommateurs de l'instance")
+                .register(meterRegistry);
+        revokeFlush = Timer.builder("notification.rebalance.flush")
+                .description("Durée de la fin du travail en cours et du commit avant révocation")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        pause = Timer.builder("notification.rebalance.pause")
+                .description("Délai entre la révocation (ou la perte) de partitions et l'assignation suivante")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        revokedAt.get()[0] = start;
+        record(REVOKED, partitions);
+        if (transactionAggregator.isEnabled()) {
+            try {
+                transactionAggregator.commit();
+            } catch (AggregatedTransactionRollbackException e) {
+                log.error("Commit de la transaction agrégée impossible avant révocation, relecture des records", e);
+                // Partitions conservées (assignation incrémentale) : relecture par ce consommateur
+                e.getFirstOffsets().forEach((partition, offset) -> {
+                    if (!partitions.contains(partition)) {
+                        consumer.seek(partition, offset);
+                    }
+                });
+            }
+        }
+        if (offsetWatermarkCommitter.isEnabled()) {
+            offsetWatermarkCommitter.commitBeforeRevocation(consumer, partitions, revokeTimeout);
+        }
+        // Erreurs persistées avant le commit des acquittements en attente par le container
+        notificationErrorHandler.flush();
+        revokeFlush.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.info("Partitions révoquées : {}, travail en cours commité en {} ms", partitions,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // Par défaut, la perte est traitée comme une révocation : les offsets ne doivent pas être commités
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        revokedAt.get()[0] = System.nanoTime();
+        record(LOST, partitions);
+        if (transactionAggregator.isEnabled()) {
+            // Offsets non commitables : la transaction ouverte est annulée
+            transactionAggregator.abort();
+        }
+        log.warn("Partitions perdues : {}, les records non commités seront relus par le nouveau propriétaire", partitions);
+    }
+
+    // Appelé à chaque fin de rééquilibrage, éventuellement sans nouvelle partition (assignation incrémentale)
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        long[] revoked = revokedAt.get();
+        if (revoked[0] != 0) {
+            pause.record(System.nanoTime() - revoked[0], TimeUnit.NANOSECONDS);
+            revoked[0] = 0;
+        }
+        meterRegistry.counter("notification.rebalances").increment();
+        if (!partitions.isEmpty()) {
+            record(ASSIGNED, partitions);
+            log.info("Partitions assignées : {}", partitions);
+        }
+    }
+
+    private void record(String type, Collection<TopicPartition> partitions) {
+        assignedPartitions.addAndGet(ASSIGNED.equals(type) ? partitions.size() : -partitions.size());
+        Counter.builder("notification.rebalance.partitions")
+                .description("Partitions assignées, révoquées ou perdues lors des rééquilibrages")
+                .tag("type", type)
+                .register(meterRegistry)
+                .increment(partitions.size());
+    }
+}
@@ -0,0 +1,126 @@
+package fr.vvlabs.notification.service.consumer.retry;
+
+import fr.vvlabs.notification.metrics.NotificationMetrics;
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.service.NotificationService;
+import fr.vvlabs.notification.service.consumer.errors.NotificationThrowErrorHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Consomme les topics de retry, un container par palier pour qu'un palier long ne retienne pas les plus courts.
+ * Un record dont l'échéance n'est pas atteinte est remis en attente (nack) sans bloquer de thread de traitement.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.retry-topics.enabled", havingValue = "true")
+@Slf4j
+public class RetryTopicListener implements AcknowledgingMessageListener<String, NotificationEvent>, SmartLifecycle {
+
+    private final ConsumerFactory<String, NotificationEvent> consumerFactory;
+    private final RetryTopicRouter retryTopicRouter;
+    private final NotificationService notificationService;
+    private final NotificationThrowErrorHandler notificationThrowErrorHandler;
+    private final NotificationMetrics notificationMetrics;
+    private final String groupId;
+    private final long maxPause;
+    private final List<ConcurrentMessageListenerContainer<String, NotificationEvent>> containers = new ArrayList<>();
+
+    public RetryTopicListener(
+            ConsumerFactory<String, NotificationEvent> consumerFactory,
+            RetryTopicRouter retryTopicRouter,
+            NotificationService notificationService,
+            NotificationThrowErrorHandler notificationThrowErrorHandler,
+            NotificationMetrics notificationMetrics,
+            @Value("${spring.kafka.consumer.notification.group-id}") String groupId,
+            @Value("${spring.kafka.consumer.notification.retry-topics.max-pause-ms:30000}") long maxPause) {
+        this.consumerFactory = consumerFactory;
+        this.retryTopicRouter = retryTopicRouter;
+        this.notificationService = notificationService;
+        this.notificationThrowErrorHandler = notificationThrowErrorHandler;
+        this.notificationMetrics = notificationMetrics;
+        this.groupId = groupId;
+        this.maxPause = maxPause;
+    }
+
+    @Override
+    public void onMessage(ConsumerRecord<String, NotificationEvent> record, Acknowledgment acknowledgment) {
+        long now = System.currentTimeMillis();
+        long due = headerValue(record, RetryTopicRouter.DUE_HEADER, now);
+        if (due > now) {
+            // Pas encore à échéance : la partition est relue après l'attente (bornée, sous max.poll.interval.ms)
+            acknowledgment.nack(Duration.ofMillis(Math.min(due - now, maxPause)));
+            return;
+        }
+
+        String tier = String.valueOf(retryTopicRouter.getDelay(record.topic()));
+        long delay = now - headerValue(record, RetryTopicRouter.SENT_HEADER, now);
+        try {
+            notificationService.buildAndSendNotification(record.value());
+            notificationMetrics.recordRetryProcessed(tier, true, delay);
+            log.info("Retry {} réussi, palier {} ms", headerValue(record, RetryTopicRouter.ATTEMPT_HEADER, 0), tier);
+        } catch (Exception e) {
+            notificationMetrics.recordRetryProcessed(tier, false, delay);
+            // Palier suivant ou DLT
+            notificationThrowErrorHandler.recover(record, e);
+            notificationThrowErrorHandler.flush();
+        }
+        acknowledgment.acknowledge();
+    }
+
+    @Override
+    public void start() {
+        for (String topic : retryTopicRouter.getRetryTopics()) {
+            ContainerProperties containerProperties = new ContainerProperties(topic);
+            containerProperties.setGroupId(groupId + "-retry");
+            containerProperties.setAckMode(ContainerProperties.AckMode.MANUAL);
+            containerProperties.setMessageListener(this);
+            // nack() impose des commits manuels, quelle que soit la stratégie du consommateur principal
+            Properties consumerProperties = new Properties();
+            consumerProperties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+            containerProperties.setKafkaConsumerProperties(consumerProperties);
+
+            ConcurrentMessageListenerContainer<String, NotificationEvent> container =
+                    new ConcurrentMessageListenerContainer<>(consumerFactory, containerProperties);
+            container.setBeanName("retry-" + topic);
+            // Seuls les messages illisibles arrivent ici : DLT directement
+            container.setCommonErrorHandler(new DefaultErrorHandler(notificationThrowErrorHandler::recover, new FixedBackOff(0, 0)));
+            container.start();
+            containers.add(container);
+            log.info("Consommation du topic de retry {}", topic);
+        }
+    }
+
+    @Override
+    public void stop() {
+        containers.forEach(ConcurrentMessageListenerContainer::stop);
+        containers.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return !containers.isEmpty();
+    }
+
+    private static long headerValue(ConsumerRecord<?, ?> record, String name, long defaultValue) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? defaultValue : RetryTopicRouter.parse(header.value());
+    }
+}
@@ -0,0 +1,150 @@
+package fr.vvlabs.notification.service.consumer.retry;
+
+import fr.vvlabs.notification.exception.SmirClientTooManyRequestException;
+import fr.vvlabs.notification.metrics.NotificationMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry non bloquant : un message en erreur quitte immédiatement la partition principale pour un topic de retry
+ * ({@code <topic>-retry-<délai ms>}), un palier par tentative. Au-delà du dernier palier, l'appelant l'envoie en DLT.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.retry-topics.enabled", havingValue = "true")
+@Slf4j
+public class RetryTopicRouter {
+
+    public static final String ATTEMPT_HEADER = "notification-retry-attempt";
+    public static final String DUE_HEADER = "notification-retry-due";
+    public static final String SENT_HEADER = "notification-retry-sent";
+    public static final String ORIGINAL_TOPIC_HEADER = "notification-retry-original-topic";
+    public static final String EXCEPTION_HEADER = "notification-retry-exception";
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final NotificationMetrics notificationMetrics;
+    private final String topic;
+    private final List<Long> delays;
+    private final double jitter;
+    private final boolean retriesSmir;
+
+    public RetryTopicRouter(
+            KafkaTemplate<String, Object> kafkaTemplate,
+            NotificationMetrics notificationMetrics,
+            @Value("${spring.kafka.consumer.notification.topic}") String topic,
+            @Value("${spring.kafka.consumer.notification.retry-topics.delays-ms:1000,10000,60000}") List<Long> delays,
+            @Value("${spring.kafka.consumer.notification.retry-topics.jitter:0.2}") double jitter,
+            @Value("${spring.kafka.consumer.notification.retries-smir:false}") boolean retriesSmir) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.notificationMetrics = notificationMetrics;
+        this.topic = topic;
+        this.delays = delays;
+        this.jitter = jitter;
+        this.retriesSmir = retriesSmir;
+    }
+
+    public List<String> getRetryTopics() {
+        return delays.stream().map(this::retryTopic).toList();
+    }
+
+    public String retryTopic(long delay) {
+        return topic + "-retry-" + delay;
+    }
+
+    public long getDelay(String retryTopic) {
+        return delays.stream()
+                .filter(delay -> retryTopic(delay).equals(retryTopic))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Topic de retry inconnu : " + retryTopic));
+    }
+
+    /**
+     * Message reçu par un listener (stratégie silent).
+     */
+    public Optional<CompletableFuture<SendResult<String, Object>>> route(Message<?> message, Exception exception) {
+        String key = message.getHeaders().get(KafkaHeaders.RECEIVED_KEY, String.class);
+        Object attempt = message.getHeaders().get(ATTEMPT_HEADER);
+        return route(key, message.getPayload(), attempt instanceof byte[] bytes ? (int) parse(bytes) : 0, null, exception);
+    }
+
+    /**
+     * Record en échec dans le container (stratégie throw, ou listener des topics de retry).
+     */
+    public Optional<CompletableFuture<SendResult<String, Object>>> route(ConsumerRecord<?, ?> record, Exception exception) {
+        Header attempt = record.headers().lastHeader(ATTEMPT_HEADER);
+        return route(record.key() == null ? null : record.key().toString(), record.value(),
+                attempt == null ? 0 : (int) parse(attempt.value()), record.headers(), exception);
+    }
+
+    private Optional<CompletableFuture<SendResult<String, Object>>> route(
+            String key, Object value, int attempt, Headers sourceHeaders, Exception exception) {
+        if (attempt >= delays.size() || value == null || !isRetryable(exception)) {
+            return Optional.empty();
+        }
+        long delay = delays.get(attempt);
+        // Jitter : étale les relances d'un même pic d'erreurs (appels SMIR notamment)
+        long jitteredDelay = Math.round(delay * (1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1)));
+        long now = System.currentTimeMillis();
+        String retryTopic = retryTopic(delay);
+
+        ProducerRecord<String, Object> retryRecord = new ProducerRecord<>(retryTopic, key, value);
+        if (sourceHeaders != null) {
+            for (Header header : sourceHeaders) {
+                if (!header.key().startsWith("notification-retry-")) {
+                    retryRecord.headers().add(header);
+                }
+            }
+        }
+        retryRecord.headers()
+                .add(ATTEMPT_HEADER, bytes(attempt + 1))
+                .add(DUE_HEADER, bytes(now + jitteredDelay))
+                .add(SENT_HEADER, bytes(now))
+                .add(ORIGINAL_TOPIC_HEADER, topic.getBytes(StandardCharsets.UTF_8))
+                .add(EXCEPTION_HEADER, String.valueOf(exception.getMessage()).getBytes(StandardCharsets.UTF_8));
+
+        log.warn("Tentative {} dans {} ms sur {} : {}", attempt + 1, jitteredDelay, retryTopic, exception.getMessage());
+        notificationMetrics.recordRetrySent(String.valueOf(delay));
+        // Hors transaction en cours (gestionnaire d'erreurs du container), l'envoi transactionnel a sa propre transaction
+        if (kafkaTemplate.isTransactional() && !kafkaTemplate.inTransaction()) {
+            return Optional.of(kafkaTemplate.executeInTransaction(operations -> operations.send(retryRecord)));
+        }
+        return Optional.of(kafkaTemplate.send(retryRecord));
+    }
+
+    private boolean isRetryable(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            // Un message illisible le restera
+            if (cause instanceof DeserializationException) {
+                return false;
+            }
+            if (cause instanceof SmirClientTooManyRequestException) {
+                return retriesSmir;
+            }
+        }
+        return true;
+    }
+
+    public static long parse(byte[] value) {
+        return Long.parseLong(new String(value, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] bytes(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.UTF_8);
+    }
+}
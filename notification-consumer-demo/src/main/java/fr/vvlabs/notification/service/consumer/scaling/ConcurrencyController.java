@@ -0,0 +1,258 @@
+package fr.vvlabs.notification.service.consumer.scaling;
+
+import fr.vvlabs.notification.metrics.NotificationMetrics;
+import fr.vvlabs.notification.service.consumer.NotificationListeners;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Ajuste la concurrence du container de notifications au lag du groupe : borné par le nombre de partitions
+ * du topic et par min-concurrency / max-concurrency. Au démarrage, la concurrence est alignée sur le nombre de
+ * partitions assignées à l'instance. Le container est redémarré à chaque changement (stop, setConcurrency, start),
+ * au plus une fois par cooldown. Avec l'appartenance statique, la concurrence n'est jamais réduite : un membre
+ * statique arrêté ne quitte pas le groupe et ses partitions resteraient sans consommateur jusqu'à l'expiration
+ * de sa session.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.autoscaling.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class ConcurrencyController {
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final NotificationMetrics notificationMetrics;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${spring.kafka.consumer.bootstrap-servers}")
+    private String bootstrapServers;
+    @Value("${spring.kafka.consumer.notification.group-id}")
+    private String groupId;
+    @Value("${spring.kafka.consumer.notification.topic}")
+    private String topic;
+    @Value("${spring.kafka.consumer.notification.autoscaling.min-concurrency:1}")
+    private int minConcurrency;
+    @Value("${spring.kafka.consumer.notification.autoscaling.max-concurrency:0}")
+    private int maxConcurrency;
+    @Value("${spring.kafka.consumer.notification.autoscaling.scale-up-lag:1000}")
+    private long scaleUpLag;
+    @Value("${spring.kafka.consumer.notification.autoscaling.scale-down-lag:100}")
+    private long scaleDownLag;
+    @Value("${spring.kafka.consumer.notification.autoscaling.target-drain-ms:30000}")
+    private long targetDrain;
+    @Value("${spring.kafka.consumer.notification.autoscaling.cooldown-ms:60000}")
+    private long cooldown;
+    @Value("${spring.kafka.consumer.notification.autoscaling.admin-timeout-ms:5000}")
+    private long adminTimeout;
+    @Value("${spring.kafka.consumer.notification.rebalance.static-membership:false}")
+    private boolean staticMembership;
+
+    private AdminClient adminClient;
+    private volatile int partitions;
+    private volatile long lag = -1;
+    private volatile double rate;
+    private volatile int concurrency;
+    private volatile Instant lastChange;
+    private boolean sized;
+    private long lastMessageCount;
+    private long lastCheck;
+
+    @PostConstruct
+    public void init() {
+        adminClient = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers));
+        Gauge.builder("notification.consumer.lag", this, ConcurrencyController::getLag)
+                .description("Lag du groupe de consommateurs sur le topic de notifications")
+                .baseUnit("messages")
+                .register(meterRegistry);
+        Gauge.builder("notification.consumer.concurrency", this, ConcurrencyController::getConcurrency)
+                .description("Nombre de consommateurs du container de notifications")
+                .register(meterRegistry);
+        if (staticMembership) {
+            log.warn("Appartenance statique active : l'autoscaling ne réduira pas la concurrence");
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        adminClient.close(Duration.ofMillis(adminTimeout));
+    }
+
+    @Scheduled(fixedDelayString = "${spring.kafka.consumer.notification.autoscaling.interval-ms:10000}",
+            initialDelayString = "${spring.kafka.consumer.notification.autoscaling.initial-delay-ms:1000}")
+    public void adjust() {
+        ConcurrentMessageListenerContainer<?, ?> container = NotificationListeners.findRunning(registry);
+        if (container == null) {
+            return;
+        }
+        try {
+            partitions = countPartitions();
+            lag = measureLag();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Lecture du lag impossible, concurrence inchangée : {}", e.getMessage());
+            return;
+        }
+        measureRate();
+
+        int current = container.getConcurrency();
+        concurrency = current;
+        if (!sized) {
+            sizeFromAssignment(container, current);
+            return;
+        }
+        int target = clamp(targetConcurrency(current));
+        if (target == current || (target < current && staticMembership)) {
+            return;
+        }
+        if (lastChange != null && lastChange.plusMillis(cooldown).isAfter(Instant.now())) {
+            log.debug("Concurrence cible {} ignorée pendant le cooldown (actuelle {})", target, current);
+            return;
+        }
+        resize(container, current, target);
+    }
+
+    // Un consommateur par partition assignée à l'instance, quel que soit le lag ; rien tant que l'assignation n'a pas eu lieu
+    private void sizeFromAssignment(ConcurrentMessageListenerContainer<?, ?> container, int current) {
+        Collection<TopicPartition> assigned = container.getAssignedPartitions();
+        if (assigned == null || assigned.isEmpty()) {
+            return;
+        }
+        sized = true;
+        int target = clamp(assigned.size());
+        if (target > current || (target < current && !staticMembership)) {
+            log.info("Concurrence initiale alignée sur les {} partitions assignées", assigned.size());
+            resize(container, current, target);
+        }
+    }
+
+    private int targetConcurrency(int current) {
+        // Temps estimé pour résorber le lag au débit mesuré sur le dernier intervalle
+        long drain = rate > 0 ? (long) (lag * 1000 / rate) : Long.MAX_VALUE;
+        if (lag > scaleUpLag && drain > targetDrain) {
+            return current * 2;
+        }
+        if (lag < scaleDownLag) {
+            return current - 1;
+        }
+        return current;
+    }
+
+    private void resize(ConcurrentMessageListenerContainer<?, ?> container, int current, int target) {
+        log.info("Concurrence {} -> {} (lag={}, débit={}/s, partitions={})", current, target, lag, String.format("%.1f", rate), partitions);
+        lastChange = Instant.now();
+        // Le stop est asynchrone : la nouvelle concurrence est appliquée une fois tous les consommateurs arrêtés
+        container.stop(() -> {
+            container.setConcurrency(target);
+            container.start();
+            concurrency = target;
+        });
+    }
+
+    private int countPartitions() throws InterruptedException, ExecutionException, TimeoutException {
+        return adminClient.describeTopics(List.of(topic)).allTopicNames()
+                .get(adminTimeout, TimeUnit.MILLISECONDS)
+                .get(topic).partitions().size();
+    }
+
+    private long measureLag() throws InterruptedException, ExecutionException, TimeoutException {
+        Map<TopicPartition, OffsetAndMetadata> committed = adminClient.listConsumerGroupOffsets(groupId)
+                .partitionsToOffsetAndMetadata()
+                .get(adminTimeout, TimeUnit.MILLISECONDS);
+        List<TopicPartition> topicPartitions = IntStream.range(0, partitions)
+                .mapToObj(partition -> new TopicPartition(topic, partition))
+                .toList();
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffsets = listOffsets(topicPartitions, OffsetSpec.latest());
+        // Partitions sans offset commité : le groupe les lira depuis le début du log, pas depuis l'offset 0 (rétention)
+        List<TopicPartition> uncommitted = topicPartitions.stream()
+                .filter(partition -> committed.get(partition) == null)
+                .toList();
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> startOffsets = uncommitted.isEmpty()
+                ? Map.of()
+                : listOffsets(uncommitted, OffsetSpec.earliest());
+        long total = 0;
+        for (Map.Entry<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> entry : endOffsets.entrySet()) {
+            OffsetAndMetadata offset = committed.get(entry.getKey());
+            long start = offset != null ? offset.offset() : startOffsets.get(entry.getKey()).offset();
+            total += Math.max(0, entry.getValue().offset() - start);
+        }
+        return total;
+    }
+
+    private Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> listOffsets(List<TopicPartition> topicPartitions, OffsetSpec spec)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        Map<TopicPartition, OffsetSpec> request = topicPartitions.stream()
+                .collect(Collectors.toMap(partition -> partition, partition -> spec));
+        return adminClient.listOffsets(request)
+                .all()
+                .get(adminTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void measureRate() {
+        long now = System.currentTimeMillis();
+        long messages = notificationMetrics.getMessageCount();
+        if (lastCheck > 0 && now > lastCheck) {
+            rate = (messages - lastMessageCount) * 1000.0 / (now - lastCheck);
+        }
+        lastMessageCount = messages;
+        lastCheck = now;
+    }
+
+    private int upperBound() {
+        int bound = Math.max(1, partitions);
+        return maxConcurrency > 0 ? Math.min(maxConcurrency, bound) : bound;
+    }
+
+    private int clamp(int value) {
+        return Math.max(Math.min(minConcurrency, upperBound()), Math.min(upperBound(), value));
+    }
+
+    public long getLag() {
+        return lag;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("topic", topic);
+        status.put("partitions", partitions);
+        status.put("lag", lag);
+        status.put("rate", rate);
+        status.put("concurrency", concurrency);
+        status.put("minConcurrency", minConcurrency);
+        status.put("maxConcurrency", upperBound());
+        status.put("lastChange", lastChange);
+        return status;
+    }
+}
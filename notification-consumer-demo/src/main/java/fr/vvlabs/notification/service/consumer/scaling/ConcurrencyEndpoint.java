@@ -0,0 +1,26 @@
+package fr.vvlabs.notification.service.consumer.scaling;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Lag mesuré et concurrence choisie par le ConcurrencyController : GET /actuator/concurrency.
+ */
+@Component
+@Endpoint(id = "concurrency")
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.autoscaling.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ConcurrencyEndpoint {
+
+    private final ConcurrencyController concurrencyController;
+
+    @ReadOperation
+    public Map<String, Object> concurrency() {
+        return concurrencyController.getStatus();
+    }
+}
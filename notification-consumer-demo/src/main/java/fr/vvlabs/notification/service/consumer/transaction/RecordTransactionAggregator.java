@@ -0,0 +1,187 @@
+package fr.vvlabs.notification.service.consumer.transaction;
+
+import fr.vvlabs.notification.exception.AggregatedTransactionRollbackException;
+import fr.vvlabs.notification.metrics.NotificationMetrics;
+import fr.vvlabs.notification.service.consumer.errors.NotificationSilentErrorHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ConsumerStoppingEvent;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Regroupe les records reçus un par un dans une même transaction Kafka, commitée après
+ * {@code transaction-batch-size} records ou {@code transaction-batch-timeout-ms}.
+ * <p>
+ * La transaction est liée au thread du consommateur (une par container) et reste ouverte d'un appel du listener
+ * à l'autre : les envois DLT des records successifs y participent. Les offsets sont acquittés (AckMode MANUAL)
+ * une fois la transaction commitée, le dernier record de chaque partition suffisant.
+ * <p>
+ * La transaction est commitée avant la révocation des partitions (NotificationRebalanceListener) et annulée à la
+ * perte des partitions ou à l'arrêt du consommateur : elle ne reste jamais ouverte au-delà du thread.
+ */
+@Component
+@Slf4j
+public class RecordTransactionAggregator {
+
+    private final NotificationMetrics notificationMetrics;
+    private final NotificationSilentErrorHandler notificationErrorHandler;
+    private final int batchSize;
+    private final long batchTimeout;
+    @Autowired(required = false)
+    protected Optional<KafkaTransactionManager<String, Object>> kafkaTransactionManager;
+
+    private final ThreadLocal<Window> windows = new ThreadLocal<>();
+
+    public RecordTransactionAggregator(
+            NotificationMetrics notificationMetrics,
+            NotificationSilentErrorHandler notificationErrorHandler,
+            @Value("${spring.kafka.consumer.notification.transaction-batch-size:1}") int batchSize,
+            @Value("${spring.kafka.consumer.notification.transaction-batch-timeout-ms:100}") long batchTimeout) {
+        this.notificationMetrics = notificationMetrics;
+        this.notificationErrorHandler = notificationErrorHandler;
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+    }
+
+    public boolean isEnabled() {
+        return batchSize > 1;
+    }
+
+    /**
+     * Traite un record dans la transaction courante du thread. En cas d'erreur, les records précédents sont commités
+     * puis l'erreur est propagée au gestionnaire d'erreurs du container pour ce seul record.
+     */
+    public void execute(Message<?> message, Acknowledgment acknowledgment, Runnable work) {
+        Window window = windows.get();
+        if (window == null) {
+            window = new Window(transactionManager().getTransaction(new DefaultTransactionDefinition()));
+            windows.set(window);
+        }
+        try {
+            work.run();
+        } catch (RuntimeException e) {
+            commit();
+            throw e;
+        }
+        window.add(message, acknowledgment);
+        if (window.size >= batchSize || window.age() >= batchTimeout) {
+            commit();
+        }
+    }
+
+    /**
+     * Commite la transaction du thread courant. Si le commit échoue, elle est annulée et les records
+     * doivent être relus : voir {@link AggregatedTransactionRollbackException}.
+     */
+    public void commit() {
+        Window window = windows.get();
+        if (window == null) {
+            return;
+        }
+        windows.remove();
+        KafkaTransactionManager<String, Object> transactionManager = transactionManager();
+        try {
+            // Les erreurs en attente d'écriture doivent être persistées avant le commit
+            notificationErrorHandler.flush();
+            long start = System.nanoTime();
+            transactionManager.commit(window.status);
+            notificationMetrics.recordTransactionCommit(window.size, System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            if (!window.status.isCompleted()) {
+                transactionManager.rollback(window.status);
+            }
+            throw new AggregatedTransactionRollbackException(
+                    "Transaction de " + window.size + " records annulée", window.firstOffsets, e);
+        }
+        notificationMetrics.recordTransaction();
+        window.acknowledgments.values().forEach(Acknowledgment::acknowledge);
+        log.info("Transaction Kafka commitée pour {} records", window.size);
+    }
+
+    /**
+     * Annule la transaction du thread courant sans acquitter ses records, qui seront relus.
+     */
+    public void abort() {
+        Window window = windows.get();
+        if (window == null) {
+            return;
+        }
+        windows.remove();
+        try {
+            if (!window.status.isCompleted()) {
+                transactionManager().rollback(window.status);
+            }
+            log.info("Transaction Kafka annulée pour {} records, relus au prochain démarrage", window.size);
+        } catch (RuntimeException e) {
+            log.warn("Annulation de la transaction agrégée impossible : {}", e.getMessage());
+        }
+    }
+
+    // Publié sur le thread du consommateur juste avant sa fermeture (arrêt ou redémarrage du container) : la
+    // transaction ouverte bloquerait les lecteurs read_committed jusqu'à son expiration
+    @EventListener
+    public void onStopping(ConsumerStoppingEvent event) {
+        abort();
+    }
+
+    // Aucun record reçu depuis transaction-batch-timeout-ms : la transaction en cours n'attend pas le suivant
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        Window window = windows.get();
+        if (window == null || window.age() < batchTimeout) {
+            return;
+        }
+        try {
+            commit();
+        } catch (AggregatedTransactionRollbackException e) {
+            log.error("Commit de la transaction agrégée impossible, relecture des records", e);
+            Consumer<?, ?> consumer = event.getConsumer();
+            e.getFirstOffsets().forEach(consumer::seek);
+        }
+    }
+
+    private KafkaTransactionManager<String, Object> transactionManager() {
+        return kafkaTransactionManager.orElseThrow(() -> new IllegalStateException("KafkaTransactionManager is null"));
+    }
+
+    private static class Window {
+
+        private final TransactionStatus status;
+        private final long startedAt = System.currentTimeMillis();
+        private final Map<TopicPartition, Long> firstOffsets = new HashMap<>();
+        private final Map<TopicPartition, Acknowledgment> acknowledgments = new HashMap<>();
+        private int size;
+
+        private Window(TransactionStatus status) {
+            this.status = status;
+        }
+
+        private void add(Message<?> message, Acknowledgment acknowledgment) {
+            TopicPartition partition = new TopicPartition(
+                    message.getHeaders().get(KafkaHeaders.RECEIVED_TOPIC, String.class),
+                    message.getHeaders().get(KafkaHeaders.RECEIVED_PARTITION, Integer.class));
+            firstOffsets.putIfAbsent(partition, message.getHeaders().get(KafkaHeaders.OFFSET, Long.class));
+            acknowledgments.put(partition, acknowledgment);
+            size++;
+        }
+
+        private long age() {
+            return System.currentTimeMillis() - startedAt;
+        }
+    }
+}
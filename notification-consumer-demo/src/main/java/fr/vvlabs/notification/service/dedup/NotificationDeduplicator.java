@@ -0,0 +1,109 @@
+package fr.vvlabs.notification.service.dedup;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.util.FingerprintWindow;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Détection des notifications déjà traitées (relectures après rééquilibrage, retry) sur la clé
+ * type d'évènement + userId + messageNumber, conservée sous forme d'empreinte 64 bits pendant {@code window-ms}.
+ * <p>
+ * Une empreinte ne permet pas de distinguer deux clés en collision : une fraction des empreintes
+ * ({@code 1 / sample-rate}) est conservée avec sa clé complète pour mesurer le taux de faux positifs.
+ */
+@Component
+@ConditionalOnProperty(name = "notification.dedup.enabled", havingValue = "true")
+@Slf4j
+public class NotificationDeduplicator {
+
+    private final FingerprintWindow window;
+    private final Cache<Long, String> sampledKeys;
+    private final long sampleMask;
+    private final Counter hits;
+    private final Counter falsePositives;
+    private final Counter dropped;
+
+    public NotificationDeduplicator(
+            MeterRegistry meterRegistry,
+            @Value("${notification.dedup.window-ms:600000}") long windowMillis,
+            @Value("${notification.dedup.buckets:10}") int buckets,
+            @Value("${notification.dedup.max-keys:5000000}") long maxKeys,
+            @Value("${notification.dedup.sample-rate:1024}") int sampleRate) {
+        this.window = new FingerprintWindow(windowMillis, buckets, maxKeys);
+        // Taux d'échantillonnage arrondi à la puissance de 2 inférieure
+        this.sampleMask = Integer.highestOneBit(Math.max(1, sampleRate)) - 1;
+        this.sampledKeys = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(windowMillis))
+                .maximumSize(Math.max(1, maxKeys / (sampleMask + 1)))
+                .build();
+
+        hits = Counter.builder("notification.dedup.hits")
+                .description("Notifications ignorées car déjà traitées")
+                .register(meterRegistry);
+        falsePositives = Counter.builder("notification.dedup.false-positives")
+                .description("Collisions d'empreintes détectées sur l'échantillon (notification traitée malgré tout)")
+                .register(meterRegistry);
+        dropped = Counter.builder("notification.dedup.dropped")
+                .description("Empreintes non retenues, fenêtre pleine (max-keys)")
+                .register(meterRegistry);
+        Gauge.builder("notification.dedup.keys", window, FingerprintWindow::size)
+                .description("Empreintes retenues dans la fenêtre de déduplication")
+                .register(meterRegistry);
+    }
+
+    public boolean isDuplicate(NotificationEvent notificationEvent) {
+        if (notificationEvent.getUserId() == null || notificationEvent.getMessageNumber() == null) {
+            return false;
+        }
+        long fingerprint = fingerprint(notificationEvent);
+        if (!window.contains(fingerprint)) {
+            return false;
+        }
+        if ((fingerprint & sampleMask) == 0) {
+            String key = sampledKeys.getIfPresent(fingerprint);
+            if (key != null && !key.equals(key(notificationEvent))) {
+                falsePositives.increment();
+                log.warn("Collision d'empreinte entre {} et {}, notification traitée", key, key(notificationEvent));
+                return false;
+            }
+        }
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * A appeler une fois le traitement réussi : une notification en échec doit pouvoir être relancée.
+     */
+    public void markProcessed(NotificationEvent notificationEvent) {
+        if (notificationEvent.getUserId() == null || notificationEvent.getMessageNumber() == null) {
+            return;
+        }
+        long fingerprint = fingerprint(notificationEvent);
+        if (!window.add(fingerprint)) {
+            dropped.increment();
+            return;
+        }
+        if ((fingerprint & sampleMask) == 0) {
+            sampledKeys.put(fingerprint, key(notificationEvent));
+        }
+    }
+
+    private static long fingerprint(NotificationEvent notificationEvent) {
+        return FingerprintWindow.fingerprint(
+                notificationEvent.getEvent(), notificationEvent.getUserId(), notificationEvent.getMessageNumber());
+    }
+
+    private static String key(NotificationEvent notificationEvent) {
+        return notificationEvent.getEvent() + "/" + notificationEvent.getUserId() + "/" + notificationEvent.getMessageNumber();
+    }
+}
@@ -0,0 +1,35 @@
+package fr.vvlabs.notification.service.handler;
+
+import fr.vvlabs.notification.record.NotificationEvent;
+import jakarta.annotation.PreDestroy;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handler exécuté dans sa propre file : un type d'évènement lent ne retarde pas les autres.
+ */
+public abstract class AbstractLaneNotificationHandler implements NotificationHandler {
+
+    private final ExecutionLane executionLane;
+
+    protected AbstractLaneNotificationHandler(ExecutionLane executionLane) {
+        this.executionLane = executionLane;
+    }
+
+    @Override
+    public CompletableFuture<Void> handle(NotificationEvent notificationEvent) {
+        return executionLane.submit(() -> process(notificationEvent));
+    }
+
+    @Override
+    public double getSaturation() {
+        return executionLane.getSaturation();
+    }
+
+    protected abstract CompletableFuture<Void> process(NotificationEvent notificationEvent);
+
+    @PreDestroy
+    public void close() {
+        executionLane.close();
+    }
+}
@@ -0,0 +1,42 @@
+package fr.vvlabs.notification.service.handler;
+
+import fr.vvlabs.notification.record.NotificationEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+@Component
+@Slf4j
+public class AjoutDocumentHandler extends AbstractLaneNotificationHandler {
+
+    public static final String EVENT_TYPE = "AJOUT_DOCUMENT";
+
+    public AjoutDocumentHandler(
+            MeterRegistry meterRegistry,
+            @Value("${notification.handlers.ajout-document.concurrency:64}") int concurrency,
+            @Value("${notification.handlers.ajout-document.queue-depth:10000}") int queueDepth) {
+        super(new ExecutionLane("ajout-document", concurrency, queueDepth,
+                () -> new RejectedExecutionException("File ajout-document saturée"), meterRegistry));
+    }
+
+    @Override
+    public String getEventType() {
+        return EVENT_TYPE;
+    }
+
+    @Override
+    protected CompletableFuture<Void> process(NotificationEvent notificationEvent) {
+        log.info("Ajout de document ... OK");
+
+        // Introduire une exception IOException aléatoire 2% du temps
+        if (Math.random() < 0.02) { // 1% de chances
+            log.error("Erreur IOException simulée pendant l'ajout de document.");
+            return CompletableFuture.failedFuture(new RuntimeException("Erreur simulée lors de l'ajout du document."));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,144 @@
+package fr.vvlabs.notification.service.handler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * File d'exécution dédiée à un type d'évènement : au plus {@code concurrency} traitements en cours (jusqu'à la fin
+ * de leur future), au plus {@code queueDepth} en attente, au-delà la tâche est rejetée.
+ * Aucun thread n'est bloqué : un traitement terminé démarre le suivant en attente.
+ */
+@Slf4j
+public class ExecutionLane implements AutoCloseable {
+
+    private final String name;
+    private final int concurrency;
+    private final int queueDepth;
+    private final Supplier<? extends RuntimeException> rejection;
+    private final Semaphore permits;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ExecutorService executor;
+    private final Counter rejected;
+    private final Timer waitTimer;
+    private final Timer executionTimer;
+
+    public ExecutionLane(String name, int concurrency, int queueDepth,
+                         Supplier<? extends RuntimeException> rejection, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.concurrency = concurrency;
+        this.queueDepth = queueDepth;
+        this.rejection = rejection;
+        this.permits = new Semaphore(concurrency);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("lane-" + name + "-", 0).factory());
+
+        Gauge.builder("notification.lane.active", this, ExecutionLane::getActive)
+                .description("Traitements en cours dans la file")
+                .tag("lane", name)
+                .register(meterRegistry);
+        Gauge.builder("notification.lane.queued", queued, AtomicInteger::get)
+                .description("Traitements en attente dans la file")
+                .tag("lane", name)
+                .register(meterRegistry);
+        rejected = Counter.builder("notification.lane.rejected")
+                .description("Traitements rejetés, file pleine")
+                .tag("lane", name)
+                .register(meterRegistry);
+        waitTimer = Timer.builder("notification.lane.wait")
+                .description("Attente dans la file avant exécution")
+                .tag("lane", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        executionTimer = Timer.builder("notification.lane.execution")
+                .description("Durée d'exécution dans la file")
+                .tag("lane", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long submittedAt = System.nanoTime();
+        Runnable start = () -> run(task, result, submittedAt);
+
+        if (queued.get() == 0 && permits.tryAcquire()) {
+            executor.execute(start);
+        } else if (queued.incrementAndGet() > queueDepth) {
+            queued.decrementAndGet();
+            rejected.increment();
+            log.warn("File {} saturée ({} en cours, {} en attente), traitement rejeté", name, concurrency, queueDepth);
+            return CompletableFuture.failedFuture(rejection.get());
+        } else {
+            waiting.add(start);
+            startWaiting();
+        }
+        return result;
+    }
+
+    public int getActive() {
+        return concurrency - permits.availablePermits();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Occupation de la file entre 0 et 1 : 1 quand toutes les places et toute la file d'attente sont prises.
+     */
+    public double getSaturation() {
+        return (double) (getActive() + getQueued()) / (concurrency + queueDepth);
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    private <T> void run(Supplier<CompletableFuture<T>> task, CompletableFuture<T> result, long submittedAt) {
+        long startedAt = System.nanoTime();
+        waitTimer.record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+        CompletableFuture<T> execution;
+        try {
+            execution = task.get();
+        } catch (RuntimeException e) {
+            execution = CompletableFuture.failedFuture(e);
+        }
+        execution.whenComplete((value, error) -> {
+            executionTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            permits.release();
+            startWaiting();
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    // Démarre les traitements en attente tant que des places sont libres
+    private void startWaiting() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                permits.release();
+            } else {
+                queued.decrementAndGet();
+                executor.execute(next);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package fr.vvlabs.notification.service.handler;
+
+import fr.vvlabs.notification.record.NotificationEvent;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Traitement d'un type d'évènement. Chaque implémentation est enregistrée par NotificationService
+ * sous son type d'évènement.
+ */
+public interface NotificationHandler {
+
+    String getEventType();
+
+    CompletableFuture<Void> handle(NotificationEvent notificationEvent);
+
+    /**
+     * Occupation entre 0 et 1, surveillée par le BackpressureController.
+     */
+    default double getSaturation() {
+        return 0;
+    }
+}
@@ -0,0 +1,43 @@
+package fr.vvlabs.notification.service.handler;
+
+import fr.vvlabs.notification.exception.SmirClientRejectedException;
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.service.SmirService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+@Component
+@Slf4j
+public class OuvertureEnsHandler extends AbstractLaneNotificationHandler {
+
+    public static final String EVENT_TYPE = "OUVERTURE_ENS";
+
+    private final SmirService smirService;
+
+    public OuvertureEnsHandler(
+            SmirService smirService,
+            MeterRegistry meterRegistry,
+            @Value("${notification.handlers.ouverture-ens.concurrency:20}") int concurrency,
+            @Value("${notification.handlers.ouverture-ens.queue-depth:1000}") int queueDepth) {
+        // File pleine : même traitement qu'un refus du bulkhead SMIR (DLT SMIR)
+        super(new ExecutionLane("ouverture-ens", concurrency, queueDepth,
+                () -> new SmirClientRejectedException("File ouverture-ens saturée"), meterRegistry));
+        this.smirService = smirService;
+    }
+
+    @Override
+    public String getEventType() {
+        return EVENT_TYPE;
+    }
+
+    @Override
+    protected CompletableFuture<Void> process(NotificationEvent notificationEvent) {
+        log.info("Ouverture ENS ... appel API SMIR");
+        return smirService.getSmirCoordonneesAsync(notificationEvent.getUserId())
+                .thenRun(() -> log.info("Ouverture ENS ... OK"));
+    }
+}
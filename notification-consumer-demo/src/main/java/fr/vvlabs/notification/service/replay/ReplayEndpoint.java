@@ -0,0 +1,45 @@
+package fr.vvlabs.notification.service.replay;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Rejeu des dead letters : POST /actuator/replay ({"source": "database|dlt|dlt-smir", ...}) pour le lancer,
+ * GET pour suivre son avancement, DELETE pour l'arrêter.
+ */
+@Component
+@Endpoint(id = "replay")
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.replay.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ReplayEndpoint {
+
+    private final ReplayService replayService;
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return replayService.getCurrent()
+                .map(ReplayJob::getStatus)
+                .orElse(Map.of("running", false));
+    }
+
+    @WriteOperation
+    public Map<String, Object> start(String source, @Nullable String errorType, @Nullable Double rate,
+                                     @Nullable Integer parallelism, @Nullable Boolean restart) {
+        return replayService.start(source, errorType, rate, parallelism, Boolean.TRUE.equals(restart)).getStatus();
+    }
+
+    @DeleteOperation
+    public Map<String, Object> stop() {
+        return replayService.stop()
+                .map(ReplayJob::getStatus)
+                .orElse(Map.of("running", false));
+    }
+}
@@ -0,0 +1,67 @@
+package fr.vvlabs.notification.service.replay;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Avancement d'un rejeu, lu par l'endpoint pendant son exécution.
+ */
+@Getter
+public class ReplayJob {
+
+    private final String source;
+    private final double rate;
+    private final int parallelism;
+    private final Instant startedAt = Instant.now();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private volatile String checkpoint;
+    private volatile boolean stopRequested;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    public ReplayJob(String source, double rate, int parallelism) {
+        this.source = source;
+        this.rate = rate;
+        this.parallelism = parallelism;
+    }
+
+    public boolean isRunning() {
+        return finishedAt == null;
+    }
+
+    void stop() {
+        stopRequested = true;
+    }
+
+    void checkpoint(Object position) {
+        checkpoint = String.valueOf(position);
+    }
+
+    void finish(Throwable error) {
+        this.error = error == null ? null : error.getMessage();
+        this.finishedAt = Instant.now();
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("source", source);
+        status.put("running", isRunning());
+        status.put("stopRequested", stopRequested);
+        status.put("rate", rate);
+        status.put("parallelism", parallelism);
+        status.put("replayed", replayed.get());
+        status.put("failed", failed.get());
+        status.put("skipped", skipped.get());
+        status.put("checkpoint", checkpoint);
+        status.put("startedAt", startedAt);
+        status.put("finishedAt", finishedAt);
+        status.put("error", error);
+        return status;
+    }
+}
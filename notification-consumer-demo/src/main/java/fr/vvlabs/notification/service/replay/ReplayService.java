@@ -0,0 +1,336 @@
+package fr.vvlabs.notification.service.replay;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.vvlabs.notification.model.ErrorEntity;
+import fr.vvlabs.notification.model.ReplayCheckpoint;
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.repository.ErrorEntityRepository;
+import fr.vvlabs.notification.repository.ReplayCheckpointRepository;
+import fr.vvlabs.notification.service.NotificationService;
+import fr.vvlabs.notification.service.consumer.errors.NotificationThrowErrorHandler;
+import fr.vvlabs.notification.service.handler.NotificationHandler;
+import fr.vvlabs.notification.util.AdaptiveRateLimiter;
+import fr.vvlabs.notification.util.Futures;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rejeu des dead letters (base de données ou topics DLT) à travers le NotificationService, sur un thread virtuel
+ * dédié. Un seul rejeu à la fois, limité en débit ({@code rate}) et en traitements simultanés ({@code parallelism}),
+ * et suspendu tant que les files des handlers dépassent {@code max-saturation} : le trafic courant reste prioritaire.
+ * <p>
+ * Un rejeu interrompu reprend à son dernier point de contrôle : dernier id traité (ReplayCheckpoint) pour la base,
+ * offsets commités du groupe {@code <group-id>-replay} pour les topics.
+ */
+@Service
+@ConditionalOnProperty(name = "spring.kafka.consumer.notification.replay.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class ReplayService {
+
+    private static final String GROUP_SUFFIX = "-replay";
+
+    private final NotificationService notificationService;
+    private final List<NotificationHandler> handlers;
+    private final Optional<ErrorEntityRepository> errorEntityRepository;
+    private final Optional<ReplayCheckpointRepository> replayCheckpointRepository;
+    private final ConsumerFactory<String, NotificationEvent> consumerFactory;
+    private final NotificationThrowErrorHandler notificationThrowErrorHandler;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${spring.kafka.consumer.notification.group-id}")
+    private String groupId;
+    @Value("${spring.kafka.consumer.notification.dlt}")
+    private String deadLetterTopic;
+    @Value("${spring.kafka.consumer.notification.dlt-smir}")
+    private String deadLetterTopicSmir;
+    @Value("${spring.kafka.consumer.notification.replay.rate:200}")
+    private double defaultRate;
+    @Value("${spring.kafka.consumer.notification.replay.parallelism:8}")
+    private int defaultParallelism;
+    @Value("${spring.kafka.consumer.notification.replay.page-size:500}")
+    private int pageSize;
+    @Value("${spring.kafka.consumer.notification.replay.max-saturation:0.7}")
+    private double maxSaturation;
+    @Value("${spring.kafka.consumer.notification.replay.poll-timeout-ms:1000}")
+    private long pollTimeout;
+
+    private final AtomicReference<ReplayJob> current = new AtomicReference<>();
+
+    /**
+     * Lance un rejeu. {@code errorType} filtre la base de données (Generic, SMIR) ; {@code restart} ignore le point
+     * de contrôle et reprend depuis le début.
+     */
+    public ReplayJob start(String source, String errorType, Double rate, Integer parallelism, boolean restart) {
+        if (!ReplaySource.DATABASE.equals(source) && !ReplaySource.DLT.equals(source) && !ReplaySource.DLT_SMIR.equals(source)) {
+            throw new IllegalArgumentException("Invalid source: " + source);
+        }
+        if (ReplaySource.DATABASE.equals(source) && errorEntityRepository.isEmpty()) {
+            throw new IllegalStateException("ErrorEntityRepository is null, dlt-database disabled");
+        }
+        ReplayJob job = new ReplayJob(source, rate != null ? rate : defaultRate, parallelism != null ? parallelism : defaultParallelism);
+        ReplayJob previous = current.get();
+        if (previous != null && previous.isRunning() || !current.compareAndSet(previous, job)) {
+            throw new IllegalStateException("Replay already running: " + current.get().getSource());
+        }
+        Thread.ofVirtual().name("notification-replay-" + source).start(() -> run(job, errorType, restart));
+        return job;
+    }
+
+    public Optional<ReplayJob> getCurrent() {
+        return Optional.ofNullable(current.get());
+    }
+
+    /**
+     * Arrêt à la fin de la page ou du poll en cours, ou dès que les handlers sont saturés : le point de contrôle
+     * ne couvre que les records déjà soumis.
+     */
+    public Optional<ReplayJob> stop() {
+        Optional<ReplayJob> job = getCurrent().filter(ReplayJob::isRunning);
+        job.ifPresent(ReplayJob::stop);
+        return job;
+    }
+
+    private void run(ReplayJob job, String errorType, boolean restart) {
+        log.info("Début du rejeu {} (débit={}/s, parallélisme={})", job.getSource(), job.getRate(), job.getParallelism());
+        Throttle throttle = new Throttle(job);
+        try {
+            if (ReplaySource.DATABASE.equals(job.getSource())) {
+                replayDatabase(job, throttle, errorType, restart);
+            } else {
+                replayTopic(job, throttle, ReplaySource.DLT.equals(job.getSource()) ? deadLetterTopic : deadLetterTopicSmir, restart);
+            }
+            job.finish(null);
+            log.info("Fin du rejeu {} : {}", job.getSource(), job.getStatus());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.finish(e);
+        } catch (RuntimeException e) {
+            log.error("Echec du rejeu {} : {}", job.getSource(), e.getMessage(), e);
+            job.finish(e);
+        }
+    }
+
+    // Pagination par clé sur l'id : chaque page repart du dernier id lu, sans offset à parcourir
+    private void replayDatabase(ReplayJob job, Throttle throttle, String errorType, boolean restart) throws InterruptedException {
+        ErrorEntityRepository repository = errorEntityRepository.orElseThrow();
+        ReplayCheckpointRepository checkpoints = replayCheckpointRepository.orElseThrow();
+        String name = ReplaySource.DATABASE + "-" + (errorType == null ? "all" : errorType);
+        long lastId = restart ? 0 : checkpoints.findById(name).map(ReplayCheckpoint::getLastId).orElse(0L);
+        job.checkpoint(lastId);
+
+        while (!job.isStopRequested()) {
+            List<ErrorEntity> page = errorType == null
+                    ? repository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(pageSize))
+                    : repository.findByErrorTypeAndIdGreaterThanOrderByIdAsc(errorType, lastId, Limit.of(pageSize));
+            if (page.isEmpty()) {
+                return;
+            }
+            ConcurrentLinkedQueue<Long> replayed = new ConcurrentLinkedQueue<>();
+            List<CompletableFuture<Throwable>> executions = new ArrayList<>(page.size());
+            // Dernier id soumis : en cas d'arrêt au milieu de la page, le point de contrôle ne le dépasse pas
+            long submittedId = lastId;
+            for (ErrorEntity errorEntity : page) {
+                NotificationEvent event = parse(job, errorEntity);
+                if (event != null) {
+                    CompletableFuture<Throwable> execution = throttle.submit(event);
+                    if (execution == null) {
+                        break;
+                    }
+                    executions.add(execution.whenComplete((error, ignored) -> {
+                        if (error == null) {
+                            replayed.add(errorEntity.getId());
+                        }
+                    }));
+                }
+                submittedId = errorEntity.getId();
+            }
+            CompletableFuture.allOf(executions.toArray(CompletableFuture[]::new)).join();
+
+            // Les lignes rejouées sont supprimées ; celles en échec restent en base, derrière le point de contrôle
+            if (!replayed.isEmpty()) {
+                repository.deleteAllByIdInBatch(replayed);
+            }
+            lastId = submittedId;
+            checkpoints.save(new ReplayCheckpoint().setName(name).setLastId(lastId).setUpdatedAt(LocalDateTime.now()));
+            job.checkpoint(lastId);
+        }
+    }
+
+    private NotificationEvent parse(ReplayJob job, ErrorEntity errorEntity) {
+        if (errorEntity.getRecord() == null) {
+            skip(job, "null record, id=" + errorEntity.getId());
+            return null;
+        }
+        try {
+            return objectMapper.readValue(errorEntity.getRecord(), NotificationEvent.class);
+        } catch (JsonProcessingException e) {
+            skip(job, "id=" + errorEntity.getId() + " : " + e.getOriginalMessage());
+            return null;
+        }
+    }
+
+    // Consommateur assigné (sans rééquilibrage), borné par les offsets de fin lus au démarrage : les records
+    // renvoyés en DLT pendant le rejeu ne sont pas relus
+    private void replayTopic(ReplayJob job, Throttle throttle, String topic, boolean restart) throws InterruptedException {
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, pageSize);
+        try (Consumer<String, NotificationEvent> consumer = consumerFactory.createConsumer(groupId + GROUP_SUFFIX, null, GROUP_SUFFIX, overrides)) {
+            List<TopicPartition> partitions = consumer.partitionsFor(topic).stream()
+                    .map(info -> new TopicPartition(topic, info.partition()))
+                    .toList();
+            consumer.assign(partitions);
+            if (restart) {
+                consumer.seekToBeginning(partitions);
+            }
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            Set<TopicPartition> remaining = new HashSet<>(partitions);
+            checkRemaining(consumer, remaining, endOffsets);
+
+            while (!remaining.isEmpty() && !job.isStopRequested()) {
+                ConsumerRecords<String, NotificationEvent> records = consumer.poll(Duration.ofMillis(pollTimeout));
+                List<ConsumerRecord<String, NotificationEvent>> polled = new ArrayList<>(records.count());
+                List<CompletableFuture<Throwable>> executions = new ArrayList<>(records.count());
+                Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+                for (ConsumerRecord<String, NotificationEvent> record : records) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    if (record.offset() >= endOffsets.get(partition)) {
+                        continue;
+                    }
+                    if (record.value() == null) {
+                        offsets.put(partition, new OffsetAndMetadata(record.offset() + 1));
+                        skip(job, partition + "@" + record.offset());
+                        continue;
+                    }
+                    CompletableFuture<Throwable> execution = throttle.submit(record.value());
+                    if (execution == null) {
+                        // Arrêt demandé : seuls les records déjà soumis sont commités
+                        break;
+                    }
+                    offsets.put(partition, new OffsetAndMetadata(record.offset() + 1));
+                    polled.add(record);
+                    executions.add(execution);
+                }
+                // Les échecs repartent en DLT depuis ce thread, avant le commit des offsets qui sert de point de contrôle
+                for (int i = 0; i < executions.size(); i++) {
+                    Throwable error = executions.get(i).join();
+                    if (error != null) {
+                        notificationThrowErrorHandler.recover(polled.get(i),
+                                error instanceof Exception exception ? exception : new IllegalStateException(error));
+                    }
+                }
+                notificationThrowErrorHandler.flush();
+                if (!offsets.isEmpty()) {
+                    consumer.commitSync(offsets);
+                    job.checkpoint(offsets);
+                }
+                checkRemaining(consumer, remaining, endOffsets);
+            }
+        }
+    }
+
+    // Les partitions dont la borne est atteinte sont mises en pause : les polls suivants ne les lisent plus
+    private void checkRemaining(Consumer<?, ?> consumer, Set<TopicPartition> remaining, Map<TopicPartition, Long> endOffsets) {
+        List<TopicPartition> done = remaining.stream()
+                .filter(partition -> consumer.position(partition) >= endOffsets.get(partition))
+                .toList();
+        if (!done.isEmpty()) {
+            consumer.pause(done);
+            done.forEach(remaining::remove);
+        }
+    }
+
+    private void skip(ReplayJob job, String detail) {
+        log.warn("Dead letter illisible, non rejouée : {}", detail);
+        job.getSkipped().incrementAndGet();
+        meterRegistry.counter("notification.replay.records", "source", job.getSource(), "outcome", "skipped").increment();
+    }
+
+    private double handlersSaturation() {
+        double max = 0;
+        for (NotificationHandler handler : handlers) {
+            max = Math.max(max, handler.getSaturation());
+        }
+        return max;
+    }
+
+    /**
+     * Débit fixe (token bucket sans adaptation), nombre de traitements simultanés borné, et attente tant que
+     * les files des handlers sont trop occupées par le trafic courant.
+     */
+    private class Throttle {
+
+        private final ReplayJob job;
+        private final AdaptiveRateLimiter rateLimiter;
+        private final Semaphore permits;
+
+        private Throttle(ReplayJob job) {
+            this.job = job;
+            this.rateLimiter = new AdaptiveRateLimiter(job.getRate(), job.getRate(), job.getRate(), 0, 1, job.getParallelism(), 0);
+            this.permits = new Semaphore(job.getParallelism());
+        }
+
+        // Le future se termine avec l'erreur du traitement, null en cas de succès. Retourne null, sans traiter
+        // l'évènement, si l'arrêt du rejeu est demandé pendant l'attente des handlers saturés.
+        private CompletableFuture<Throwable> submit(NotificationEvent event) throws InterruptedException {
+            while (handlersSaturation() >= maxSaturation) {
+                if (job.isStopRequested()) {
+                    return null;
+                }
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            rateLimiter.tryAcquire(Long.MAX_VALUE);
+            permits.acquire();
+            CompletableFuture<Void> execution;
+            try {
+                execution = notificationService.buildAndSendNotificationAsync(event);
+            } catch (RuntimeException e) {
+                execution = CompletableFuture.failedFuture(e);
+            }
+            return execution.handle((ignored, error) -> {
+                permits.release();
+                Throwable cause = error == null ? null : Futures.unwrap(error);
+                if (cause == null) {
+                    job.getReplayed().incrementAndGet();
+                } else {
+                    log.warn("Echec du rejeu de {} : {}", event, cause.getMessage());
+                    job.getFailed().incrementAndGet();
+                }
+                meterRegistry.counter("notification.replay.records",
+                        "source", job.getSource(), "outcome", cause == null ? "replayed" : "failed").increment();
+                return cause;
+            });
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package fr.vvlabs.notification.service.replay;
+
+public class ReplaySource {
+
+    public static final String DATABASE = "database";
+    public static final String DLT = "dlt";
+    public static final String DLT_SMIR = "dlt-smir";
+
+    private ReplaySource() {
+    }
+}
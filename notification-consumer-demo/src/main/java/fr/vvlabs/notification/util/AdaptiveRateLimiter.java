@@ -0,0 +1,102 @@
+package fr.vvlabs.notification.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket dont le débit s'adapte selon un schéma AIMD : augmentation additive à chaque succès,
+ * diminution multiplicative à chaque refus (au plus une fois par période de cooldown).
+ * Un ReentrantLock est utilisé plutôt que synchronized pour ne pas épingler les threads virtuels.
+ */
+public class AdaptiveRateLimiter {
+
+    private final double minRate;
+    private final double maxRate;
+    private final double additiveIncrease;
+    private final double multiplicativeDecrease;
+    private final double burst;
+    private final long decreaseCooldownNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    private long lastDecrease;
+
+    public AdaptiveRateLimiter(double initialRate, double minRate, double maxRate,
+                               double additiveIncrease, double multiplicativeDecrease,
+                               double burst, long decreaseCooldownMs) {
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.additiveIncrease = additiveIncrease;
+        this.multiplicativeDecrease = multiplicativeDecrease;
+        this.burst = Math.max(1, burst);
+        this.decreaseCooldownNanos = TimeUnit.MILLISECONDS.toNanos(decreaseCooldownMs);
+        this.rate = Math.clamp(initialRate, minRate, maxRate);
+        this.tokens = this.burst;
+        this.lastRefill = System.nanoTime();
+        this.lastDecrease = lastRefill - decreaseCooldownNanos;
+    }
+
+    /**
+     * Réserve un jeton, en attendant au plus maxWaitMs. Retourne false si l'attente serait plus longue.
+     */
+    public boolean tryAcquire(long maxWaitMs) throws InterruptedException {
+        long waitNanos;
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            waitNanos = tokens >= 1 ? 0 : (long) ((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+            if (waitNanos > TimeUnit.MILLISECONDS.toNanos(maxWaitMs)) {
+                return false;
+            }
+            // Le jeton est réservé immédiatement (solde éventuellement négatif), l'attente se fait hors verrou
+            tokens -= 1;
+        } finally {
+            lock.unlock();
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return true;
+    }
+
+    public void onSuccess() {
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            rate = Math.min(maxRate, rate + additiveIncrease);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onThrottled() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            if (now - lastDecrease >= decreaseCooldownNanos) {
+                rate = Math.max(minRate, rate * multiplicativeDecrease);
+                tokens = Math.min(tokens, 1);
+                lastDecrease = now;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getRate() {
+        lock.lock();
+        try {
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+}
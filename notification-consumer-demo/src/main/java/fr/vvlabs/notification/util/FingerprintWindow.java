@@ -0,0 +1,199 @@
+package fr.vvlabs.notification.util;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ensemble d'empreintes 64 bits sur une fenêtre glissante, sans objet par entrée : chaque segment répartit ses
+ * empreintes dans {@code buckets} tables à adressage ouvert (long[]), une par tranche de temps. La tranche la plus
+ * ancienne est vidée lorsqu'elle est réutilisée, ce qui fait expirer ses empreintes d'un bloc.
+ * <p>
+ * Environ 16 octets par empreinte (taux de remplissage maximal de 50 %). Au-delà de {@code maxKeys}, les nouvelles
+ * empreintes ne sont plus retenues : la mémoire reste bornée, au prix de doublons non détectés.
+ */
+public class FingerprintWindow {
+
+    private static final int SEGMENTS = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long bucketMillis;
+    private final int maxKeysPerBucket;
+
+    public FingerprintWindow(long windowMillis, int buckets, long maxKeys) {
+        this.bucketMillis = Math.max(1, windowMillis / buckets);
+        this.maxKeysPerBucket = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(1, maxKeys / ((long) SEGMENTS * buckets)));
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(buckets);
+        }
+    }
+
+    public boolean contains(long fingerprint) {
+        return segment(fingerprint).contains(fingerprint, System.currentTimeMillis() / bucketMillis);
+    }
+
+    /**
+     * Faux si l'empreinte n'a pas pu être retenue (tranche pleine).
+     */
+    public boolean add(long fingerprint) {
+        return segment(fingerprint).add(fingerprint, System.currentTimeMillis() / bucketMillis);
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segment(long fingerprint) {
+        return segments[(int) (fingerprint >>> 60)];
+    }
+
+    /**
+     * Empreinte 64 bits (FNV-1a, puis mélange final de MurmurHash3) d'une suite de valeurs.
+     */
+    public static long fingerprint(Object... values) {
+        long hash = 0xcbf29ce484222325L;
+        for (Object value : values) {
+            String text = String.valueOf(value);
+            for (int i = 0; i < text.length(); i++) {
+                hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+            }
+            // Séparateur : ("ab", "c") et ("a", "bc") ont des empreintes différentes
+            hash = (hash ^ 0x1f) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // Un ReentrantLock plutôt que synchronized pour ne pas épingler les threads virtuels
+    private class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongHashSet[] tables;
+        private final long[] epochs;
+
+        private Segment(int buckets) {
+            tables = new LongHashSet[buckets];
+            epochs = new long[buckets];
+            for (int i = 0; i < buckets; i++) {
+                tables[i] = new LongHashSet();
+                epochs[i] = -1;
+            }
+        }
+
+        private boolean contains(long fingerprint, long epoch) {
+            lock.lock();
+            try {
+                for (int i = 0; i < tables.length; i++) {
+                    if (epochs[i] > epoch - tables.length && tables[i].contains(fingerprint)) {
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean add(long fingerprint, long epoch) {
+            lock.lock();
+            try {
+                int slot = (int) (epoch % tables.length);
+                if (epochs[slot] != epoch) {
+                    tables[slot].clear();
+                    epochs[slot] = epoch;
+                }
+                return tables[slot].size() < maxKeysPerBucket && tables[slot].add(fingerprint);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long size() {
+            lock.lock();
+            try {
+                long size = 0;
+                for (LongHashSet table : tables) {
+                    size += table.size();
+                }
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Table à adressage ouvert (sondage linéaire) de long. 0 sert de case vide : l'empreinte 0 est stockée comme 1.
+     */
+    private static class LongHashSet {
+
+        private long[] table = new long[INITIAL_CAPACITY];
+        private int size;
+
+        private boolean contains(long value) {
+            long key = value == 0 ? 1 : value;
+            int mask = table.length - 1;
+            for (int index = (int) key & mask; table[index] != 0; index = (index + 1) & mask) {
+                if (table[index] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean add(long value) {
+            if ((size + 1) * 2 > table.length) {
+                resize(table.length * 2);
+            }
+            long key = value == 0 ? 1 : value;
+            int mask = table.length - 1;
+            int index = (int) key & mask;
+            while (table[index] != 0) {
+                if (table[index] == key) {
+                    return true;
+                }
+                index = (index + 1) & mask;
+            }
+            table[index] = key;
+            size++;
+            return true;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        // La mémoire d'une tranche expirée est rendue, et non seulement remise à zéro
+        private void clear() {
+            if (table.length > INITIAL_CAPACITY) {
+                table = new long[INITIAL_CAPACITY];
+            } else {
+                Arrays.fill(table, 0);
+            }
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] previous = table;
+            table = new long[capacity];
+            int mask = capacity - 1;
+            for (long key : previous) {
+                if (key != 0) {
+                    int index = (int) key & mask;
+                    while (table[index] != 0) {
+                        index = (index + 1) & mask;
+                    }
+                    table[index] = key;
+                }
+            }
+        }
+    }
+}
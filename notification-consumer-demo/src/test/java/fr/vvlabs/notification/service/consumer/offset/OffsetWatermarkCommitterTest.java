@@ -0,0 +1,128 @@
+package fr.vvlabs.notification.service.consumer.offset;
+
+import fr.vvlabs.notification.config.CommitStrategy;
+import fr.vvlabs.notification.config.ConsumerMode;
+import fr.vvlabs.notification.config.ExceptionStrategy;
+import fr.vvlabs.notification.metrics.NotificationMetrics;
+import fr.vvlabs.notification.service.consumer.errors.NotificationSilentErrorHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class OffsetWatermarkCommitterTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("ens_notification", 0);
+
+    private OffsetWatermarkCommitter committer;
+    private MockConsumer<String, String> consumer;
+
+    @BeforeEach
+    void setUp() {
+        committer = new OffsetWatermarkCommitter(
+                mock(NotificationSilentErrorHandler.class),
+                mock(NotificationMetrics.class),
+                new SimpleMeterRegistry(),
+                ConsumerMode.RECORD,
+                CommitStrategy.MANUAL,
+                true,
+                64,
+                0,
+                true,
+                ExceptionStrategy.SILENT,
+                ExceptionStrategy.SILENT);
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(List.of(PARTITION));
+        consumer.updateBeginningOffsets(Map.of(PARTITION, 0L));
+    }
+
+    @Test
+    void commitsWatermarkOnceSendsAreAcknowledged() {
+        CompletableFuture<Void> dltSend = new CompletableFuture<>();
+        submit(0, failedProcessing(), dltSend);
+        submit(1, null, CompletableFuture.completedFuture(null));
+
+        committer.commitNow(consumer);
+        assertTrue(committed() <= 0, "offset 0 commité avant l'acquittement de son envoi DLT");
+
+        dltSend.complete(null);
+        committer.commitNow(consumer);
+        assertEquals(2, committed());
+    }
+
+    @Test
+    void asyncDltFailureSeeksBackToFailedRecord() {
+        CompletableFuture<Void> dltSend = new CompletableFuture<>();
+        submit(0, null, CompletableFuture.completedFuture(null));
+        submit(1, failedProcessing(), dltSend);
+        submit(2, null, CompletableFuture.completedFuture(null));
+        committer.commitNow(consumer);
+        assertEquals(1, committed());
+
+        // Le broker refuse l'envoi DLT après la fin du traitement
+        dltSend.completeExceptionally(new IllegalStateException("DLT indisponible"));
+        committer.commitNow(consumer);
+        assertEquals(1, committed());
+        assertEquals(1, consumer.position(PARTITION));
+
+        // Relecture du record en échec et du suivant : l'envoi DLT aboutit cette fois
+        submit(1, failedProcessing(), CompletableFuture.completedFuture(null));
+        submit(2, null, CompletableFuture.completedFuture(null));
+        committer.commitNow(consumer);
+        assertEquals(3, committed());
+    }
+
+    @Test
+    void completionExceptionDoesNotReachListener() {
+        submit(0, null, null, true);
+        submit(1, null, CompletableFuture.completedFuture(null));
+
+        committer.commitNow(consumer);
+        assertTrue(committed() <= 0);
+        assertEquals(0, consumer.position(PARTITION));
+    }
+
+    private void submit(long offset, Throwable error, CompletableFuture<?> sends) {
+        submit(offset, error, sends, false);
+    }
+
+    private void submit(long offset, Throwable error, CompletableFuture<?> sends, boolean throwOnComplete) {
+        Message<String> message = MessageBuilder.withPayload("notification-" + offset)
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, PARTITION.topic())
+                .setHeader(KafkaHeaders.RECEIVED_PARTITION, PARTITION.partition())
+                .setHeader(KafkaHeaders.OFFSET, offset)
+                .build();
+        committer.submit(message, consumer,
+                () -> error == null ? CompletableFuture.completedFuture(null) : CompletableFuture.failedFuture(error),
+                (completed, completionError) -> {
+                    if (throwOnComplete) {
+                        throw new IllegalStateException("Envoi DLT impossible");
+                    }
+                    return sends;
+                });
+    }
+
+    private static Throwable failedProcessing() {
+        return new IllegalStateException("Erreur simulée");
+    }
+
+    private long committed() {
+        OffsetAndMetadata offset = consumer.committed(Set.of(PARTITION)).get(PARTITION);
+        return offset == null ? -1 : offset.offset();
+    }
+}
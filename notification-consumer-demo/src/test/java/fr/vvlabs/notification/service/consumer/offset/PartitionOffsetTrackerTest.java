@@ -0,0 +1,115 @@
+package fr.vvlabs.notification.service.consumer.offset;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionOffsetTrackerTest {
+
+    @Test
+    void watermarkAdvancesOnlyOnContiguousCompletions() {
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker(64);
+        assertEquals(-1, tracker.getWatermark());
+
+        tracker.track(0);
+        tracker.track(1);
+        tracker.track(2);
+        tracker.complete(1);
+        tracker.complete(2);
+        assertEquals(0, tracker.getWatermark());
+        assertEquals(3, tracker.getPending());
+
+        tracker.complete(0);
+        assertEquals(3, tracker.getWatermark());
+        assertEquals(0, tracker.getPending());
+    }
+
+    @Test
+    void wrapsAroundCapacity() {
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker(64);
+        for (long offset = 0; offset < 64; offset++) {
+            tracker.track(offset);
+        }
+        // Anneau plein tant que l'offset 0 est en cours
+        assertFalse(tracker.canTrack(64));
+        assertTrue(tracker.canTrack(63));
+        for (long offset = 0; offset < 64; offset++) {
+            tracker.complete(offset);
+        }
+        assertEquals(64, tracker.getWatermark());
+
+        // Deuxième tour : mêmes cases de l'anneau, terminées dans le désordre
+        for (long offset = 64; offset < 128; offset++) {
+            assertTrue(tracker.canTrack(offset));
+            tracker.track(offset);
+        }
+        for (long offset = 127; offset >= 65; offset--) {
+            tracker.complete(offset);
+        }
+        assertEquals(64, tracker.getWatermark());
+        tracker.complete(64);
+        assertEquals(128, tracker.getWatermark());
+    }
+
+    @Test
+    void fillsGapsForMissingOffsets() {
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker(64);
+        tracker.track(10);
+        // 11 à 14 jamais reçus (marqueurs de transaction, compaction) : considérés terminés
+        tracker.track(15);
+        tracker.complete(10);
+        assertEquals(15, tracker.getWatermark());
+        tracker.complete(15);
+        assertEquals(16, tracker.getWatermark());
+    }
+
+    @Test
+    void resetsAfterSeekWhileIdle() {
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker(64);
+        tracker.track(0);
+        tracker.track(1);
+        tracker.complete(0);
+        tracker.complete(1);
+        assertEquals(2, tracker.getWatermark());
+
+        // Seek en arrière sans traitement en cours
+        tracker.track(0);
+        assertEquals(0, tracker.getWatermark());
+        assertEquals(1, tracker.getPending());
+        tracker.complete(0);
+        assertEquals(1, tracker.getWatermark());
+
+        // Reprise loin du dernier offset (au-delà de l'anneau) sans traitement en cours
+        tracker.track(1000);
+        assertEquals(1000, tracker.getWatermark());
+        tracker.complete(1000);
+        assertEquals(1001, tracker.getWatermark());
+    }
+
+    @Test
+    void redeliveryOfInFlightOffsetKeepsWatermark() {
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker(64);
+        tracker.track(10);
+        tracker.track(11);
+        tracker.track(12);
+        tracker.complete(11);
+        tracker.complete(12);
+
+        // 10 relu (seek après un échec) alors qu'il est toujours en cours : le watermark ne doit pas le dépasser
+        assertTrue(tracker.canTrack(10));
+        tracker.track(10);
+        tracker.track(11);
+        tracker.track(12);
+        assertEquals(10, tracker.getWatermark());
+        assertEquals(3, tracker.getPending());
+
+        tracker.complete(10);
+        assertEquals(13, tracker.getWatermark());
+        // Fins de traitement en double des relectures : ignorées
+        tracker.complete(11);
+        tracker.complete(12);
+        assertEquals(13, tracker.getWatermark());
+    }
+}
@@ -0,0 +1,48 @@
+package fr.vvlabs.notification.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.vvlabs.notification.record.NotificationEvent;
+import fr.vvlabs.notification.serialization.NotificationEventAvroSerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+@Configuration
+public class KafkaProducerConfig {
+
+    @Value("${spring.kafka.producer.format:json}") // json, avro
+    private String format;
+    @Value("${spring.kafka.producer.schema-registry-url:mock://notification}")
+    private String schemaRegistryUrl;
+
+    @Bean
+    public ProducerFactory<String, NotificationEvent> producerFactory(KafkaProperties kafkaProperties, ObjectMapper objectMapper) {
+        return new DefaultKafkaProducerFactory<>(
+                kafkaProperties.buildProducerProperties(null),
+                new StringSerializer(),
+                eventSerializer(objectMapper));
+    }
+
+    @Bean
+    public KafkaTemplate<String, NotificationEvent> kafkaTemplate(ProducerFactory<String, NotificationEvent> producerFactory) {
+        return new KafkaTemplate<>(producerFactory);
+    }
+
+    private Serializer<NotificationEvent> eventSerializer(ObjectMapper objectMapper) {
+        switch (format) {
+            case SerializationFormat.JSON:
+                return new JsonSerializer<NotificationEvent>(objectMapper).noTypeInfo();
+            case SerializationFormat.AVRO:
+                return new NotificationEventAvroSerializer(schemaRegistryUrl);
+            default:
+                throw new IllegalStateException("Invalid format: " + format);
+        }
+    }
+}
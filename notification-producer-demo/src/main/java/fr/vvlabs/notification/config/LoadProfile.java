@@ -0,0 +1,11 @@
+package fr.vvlabs.notification.config;
+
+public class LoadProfile {
+
+    // Débit constant (rate)
+    public static final String CONSTANT = "constant";
+    // Montée linéaire de start-rate à rate pendant ramp-ms, puis débit constant
+    public static final String RAMP = "ramp";
+    // Débit rate, avec des pics à burst-rate pendant burst-ms toutes les burst-interval-ms
+    public static final String BURST = "burst";
+}
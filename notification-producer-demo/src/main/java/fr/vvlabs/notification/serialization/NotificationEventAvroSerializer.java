@@ -0,0 +1,55 @@
+package fr.vvlabs.notification.serialization;
+
+import fr.vvlabs.notification.record.NotificationEvent;
+import io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig;
+import io.confluent.kafka.serializers.KafkaAvroSerializer;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Sérialise un NotificationEvent au format binaire Avro (avro/NotificationEvent.avsc, partagé avec le consommateur).
+ */
+public class NotificationEventAvroSerializer implements Serializer<NotificationEvent> {
+
+    public static final Schema SCHEMA = loadSchema();
+
+    private final KafkaAvroSerializer delegate = new KafkaAvroSerializer();
+
+    public NotificationEventAvroSerializer(String schemaRegistryUrl) {
+        delegate.configure(Map.of(AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, schemaRegistryUrl), false);
+    }
+
+    @Override
+    public byte[] serialize(String topic, NotificationEvent event) {
+        if (event == null) {
+            return null;
+        }
+        GenericRecord record = new GenericData.Record(SCHEMA);
+        record.put("event", event.getEvent());
+        record.put("userId", event.getUserId());
+        record.put("ipAddress", event.getIpAddress());
+        record.put("userAgent", event.getUserAgent());
+        record.put("messageNumber", event.getMessageNumber());
+        return delegate.serialize(topic, record);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private static Schema loadSchema() {
+        try (InputStream schema = NotificationEventAvroSerializer.class.getResourceAsStream("/avro/NotificationEvent.avsc")) {
+            return new Schema.Parser().parse(schema);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package fr.vvlabs.notification.service;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Répartition des types d'évènements, au format {@code TYPE:poids,TYPE:poids} (poids relatifs).
+ */
+public class EventMix {
+
+    private final String[] events;
+    private final double[] cumulativeWeights;
+
+    public EventMix(String mix) {
+        String[] entries = mix.split(",");
+        events = new String[entries.length];
+        cumulativeWeights = new double[entries.length];
+        double total = 0;
+        for (int i = 0; i < entries.length; i++) {
+            String[] entry = entries[i].trim().split(":");
+            if (entry.length != 2 || Double.parseDouble(entry[1]) < 0) {
+                throw new IllegalArgumentException("Invalid event mix entry: " + entries[i]);
+            }
+            events[i] = entry[0].trim();
+            total += Double.parseDouble(entry[1]);
+            cumulativeWeights[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Invalid event mix: " + mix);
+        }
+    }
+
+    public String next(RandomGenerator random) {
+        double value = random.nextDouble(cumulativeWeights[cumulativeWeights.length - 1]);
+        int index = Arrays.binarySearch(cumulativeWeights, value);
+        // Position d'insertion : premier poids cumulé supérieur à la valeur tirée
+        return events[index >= 0 ? Math.min(index + 1, events.length - 1) : -index - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        double previous = 0;
+        for (int i = 0; i < events.length; i++) {
+            builder.append(i == 0 ? "" : ", ").append(events[i]).append('=')
+                    .append(String.format("%.1f%%", (cumulativeWeights[i] - previous) * 100 / cumulativeWeights[events.length - 1]));
+            previous = cumulativeWeights[i];
+        }
+        return builder.toString();
+    }
+}
@@ -1,65 +1,222 @@
 package fr.vvlabs.notification.service;
 
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.vvlabs.notification.config.LoadProfile;
 import fr.vvlabs.notification.record.NotificationEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Générateur de charge en modèle ouvert : les envois suivent un planning (débit cible du profil de charge) et
+ * n'attendent pas l'acquittement des précédents. Chaque émetteur (thread virtuel) prend en charge une part du
+ * débit. La latence est mesurée depuis l'heure d'envoi prévue : un retard de l'émetteur est compté, et non masqué.
+ * <p>
+ * Les messages sont clés par userId, tiré dans une population de {@code users} utilisateurs : les évènements
+ * d'un même utilisateur arrivent sur la même partition, dans l'ordre.
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class NotificationProducerService {
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
-    private final Random random = new Random();
+    // Valeur sérialisée en JSON ou en Avro selon spring.kafka.producer.format (KafkaProducerConfig)
+    private final KafkaTemplate<String, NotificationEvent> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
 
     @Value("${spring.kafka.producer.topic-name}")
     private String topicName;
-    @Value("${spring.kafka.producer.delay-ms:1000}")
-    private int delay;
     @Value("${spring.kafka.producer.max-messages:1000}")
-    private int maxMessages;
+    private long maxMessages;
+    @Value("${spring.kafka.producer.load.enabled:true}")
+    private boolean enabled;
+    @Value("${spring.kafka.producer.load.profile:constant}")
+    private String profile;
+    @Value("${spring.kafka.producer.load.rate:1000}")
+    private double rate;
+    @Value("${spring.kafka.producer.load.start-rate:10}")
+    private double startRate;
+    @Value("${spring.kafka.producer.load.ramp-ms:60000}")
+    private long rampDuration;
+    @Value("${spring.kafka.producer.load.burst-rate:5000}")
+    private double burstRate;
+    @Value("${spring.kafka.producer.load.burst-ms:5000}")
+    private long burstDuration;
+    @Value("${spring.kafka.producer.load.burst-interval-ms:30000}")
+    private long burstInterval;
+    @Value("${spring.kafka.producer.load.duration-ms:0}")
+    private long duration;
+    @Value("${spring.kafka.producer.load.senders:4}")
+    private int senders;
+    @Value("${spring.kafka.producer.load.users:10000}")
+    private int users;
+    @Value("${spring.kafka.producer.load.event-mix:AJOUT_DOCUMENT:90,OUVERTURE_ENS:5,INCITATION_ENROLEMENT:5}")
+    private String eventMixConfig;
+    @Value("${spring.kafka.producer.load.report-interval-ms:5000}")
+    private long reportInterval;
+
+    private final AtomicLong messageCount = new AtomicLong();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private EventMix eventMix;
+    private String[] userIds;
+    private Timer ackLatency;
+    private Counter failures;
+    private volatile long startNanos;
+    private volatile double achievedRate;
+    private volatile boolean stopped;
 
     @PostConstruct
-    public void process() throws Exception {
-        int messageCount = 0;
-        do {
-            String userId = UUID.randomUUID().toString();
-            messageCount++;
-            String eventType = generateRandomEvent();
-            NotificationEvent authentification = NotificationEvent
+    public void init() {
+        eventMix = new EventMix(eventMixConfig);
+        userIds = new String[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = UUID.randomUUID().toString();
+        }
+        ackLatency = Timer.builder("notification.producer.ack.latency")
+                .description("Délai entre l'heure d'envoi prévue et l'acquittement du broker")
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        failures = Counter.builder("notification.producer.errors")
+                .description("Envois en échec")
+                .register(meterRegistry);
+        Gauge.builder("notification.producer.rate", this, service -> service.achievedRate)
+                .description("Débit acquitté sur le dernier intervalle de rapport")
+                .baseUnit("messages/s")
+                .register(meterRegistry);
+    }
+
+    // Après le démarrage : l'application (actuator) est disponible pendant l'injection
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        log.info("Injection vers {} : profil {}, débit {}/s, {} émetteurs, {} utilisateurs, évènements {}",
+                topicName, profile, rate, senders, users, eventMix);
+        startNanos = System.nanoTime();
+        List<Thread> threads = new ArrayList<>(senders);
+        for (int i = 0; i < senders; i++) {
+            threads.add(Thread.ofVirtual().name("notification-sender-" + i).start(this::send));
+        }
+        Thread.ofVirtual().name("notification-load-report").start(() -> report(threads));
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+    }
+
+    private void send() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long next = System.nanoTime();
+        while (!stopped && !isComplete(next)) {
+            long scheduled = next;
+            // Chaque émetteur assure 1/senders du débit : son intervalle est senders fois l'intervalle global
+            next += (long) (TimeUnit.SECONDS.toNanos(1) * senders / targetRate(scheduled - startNanos));
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long messageNumber = messageCount.incrementAndGet();
+            if (maxMessages > 0 && messageNumber > maxMessages) {
+                return;
+            }
+            String userId = userIds[random.nextInt(userIds.length)];
+            NotificationEvent notificationEvent = NotificationEvent
                     .builder()
-                    .event(eventType)
+                    .event(eventMix.next(random))
                     .userId(userId)
-                    .messageNumber(messageCount)
+                    .messageNumber((int) messageNumber)
                     .ipAddress("127.0.0.1")
                     .userAgent("chrome")
                     .build();
 
-            String authJson = objectMapper.writeValueAsString(authentification);
-            log.info("sending notification='{}'", authJson);
-            kafkaTemplate.send(topicName, authJson);
-            Thread.sleep(delay);
-        } while(messageCount < maxMessages);
+            log.trace("sending notification='{}'", notificationEvent);
+            try {
+                kafkaTemplate.send(topicName, userId, notificationEvent).whenComplete((result, error) -> onAck(scheduled, error));
+            } catch (RuntimeException e) {
+                onAck(scheduled, e);
+            }
+        }
     }
 
-    private String generateRandomEvent() {
-        double randomValue = random.nextDouble() * 100;
-        if (randomValue < 90) {
-            return "AJOUT_DOCUMENT";
-        } else if (randomValue < 95) {
-            return "OUVERTURE_ENS";
+    private void onAck(long scheduled, Throwable error) {
+        if (error == null) {
+            acknowledged.incrementAndGet();
+            ackLatency.record(System.nanoTime() - scheduled, TimeUnit.NANOSECONDS);
         } else {
-            return "INCITATION_ENROLEMENT";
+            failures.increment();
+            log.warn("Echec d'envoi : {}", error.getMessage());
+        }
+    }
+
+    private boolean isComplete(long now) {
+        return (maxMessages > 0 && messageCount.get() >= maxMessages)
+                || (duration > 0 && now - startNanos >= TimeUnit.MILLISECONDS.toNanos(duration));
+    }
+
+    private double targetRate(long elapsedNanos) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        double target = switch (profile) {
+            case LoadProfile.CONSTANT -> rate;
+            case LoadProfile.RAMP -> elapsed >= rampDuration ? rate : startRate + (rate - startRate) * elapsed / rampDuration;
+            case LoadProfile.BURST -> elapsed % burstInterval < burstDuration ? burstRate : rate;
+            default -> throw new IllegalStateException("Invalid profile: " + profile);
+        };
+        return Math.max(0.1, target);
+    }
+
+    private void report(List<Thread> threads) {
+        long lastAcknowledged = 0;
+        long lastReport = startNanos;
+        try {
+            while (threads.stream().anyMatch(Thread::isAlive)) {
+                TimeUnit.MILLISECONDS.sleep(reportInterval);
+                long now = System.nanoTime();
+                long acks = acknowledged.get();
+                achievedRate = (acks - lastAcknowledged) * 1e9 / Math.max(1, now - lastReport);
+                log.info("Débit cible {}/s, acquitté {}/s, latence {}, erreurs {}",
+                        String.format("%.0f", targetRate(now - startNanos)), String.format("%.0f", achievedRate),
+                        latencies(), (long) failures.count());
+                lastAcknowledged = acks;
+                lastReport = now;
+            }
+            kafkaTemplate.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+        log.info("Fin de l'injection : {} messages acquittés en {} s ({}/s), {} erreurs, latence {}",
+                acknowledged.get(), String.format("%.1f", elapsed), String.format("%.0f", acknowledged.get() / elapsed),
+                (long) failures.count(), latencies());
+    }
+
+    private String latencies() {
+        StringBuilder builder = new StringBuilder();
+        for (ValueAtPercentile percentile : ackLatency.takeSnapshot().percentileValues()) {
+            builder.append(builder.isEmpty() ? "" : " ")
+                    .append(String.format("p%.0f=%.1fms", percentile.percentile() * 100, percentile.value(TimeUnit.MILLISECONDS)));
         }
+        return builder.toString();
     }
 }